@@ -0,0 +1,72 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.benchmark.HadoopCorpus;
+import io.zeromagic.logclustering.input.HadoopInputProducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End to end run of term vector pipeline over synthetic Hadoop logs written to a temporary directory:
+ * parsing, vectorization, clustering and writing of the report.
+ * Lives in the application package, as {@link Pipeline} is not public.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class PipelineBenchmark {
+    @Param({"10", "50"})
+    public int files;
+
+    @Param("5000")
+    public int entriesPerFile;
+
+    private Path input;
+    private Path output;
+
+    @Setup
+    public void setup() throws IOException {
+        input = Files.createTempDirectory("hadoop-corpus");
+        output = Files.createTempDirectory("pipeline-output");
+        new HadoopCorpus(1).writeTo(input, files, entriesPerFile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        delete(input);
+        delete(output);
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public void termVectorPipeline() throws IOException, InterruptedException, ExecutionException {
+        new Pipeline<>(TermVectorAdapter.INSTANCE, 128).run(new HadoopInputProducer(input), output);
+    }
+}
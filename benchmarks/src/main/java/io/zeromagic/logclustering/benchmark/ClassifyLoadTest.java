@@ -0,0 +1,152 @@
+package io.zeromagic.logclustering.benchmark;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of the classify server ({@code App --serve}), posting batches of a LogAnalytics JSON file.
+ * <p>
+ * Requests are sent at a fixed rate regardless of how fast the server answers (open loop), and latency is measured
+ * from the time a request was scheduled to be sent. A server falling behind therefore shows in the percentiles,
+ * instead of just slowing the test down.
+ * <p>
+ * {@code java -cp target/benchmarks.jar io.zeromagic.logclustering.benchmark.ClassifyLoadTest <json file>
+ * [--url http://localhost:8080] [--rate requests/s] [--batch entries] [--duration seconds] [--warmup seconds]}
+ */
+public class ClassifyLoadTest {
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5)).build();
+    private final URI classify;
+    private final List<String> batches;
+    private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+    ClassifyLoadTest(URI server, List<String> batches) {
+        this.classify = server.resolve("/classify");
+        this.batches = batches;
+    }
+
+    /**
+     * Split the array of the file into JSON bodies of given number of entries
+     */
+    static List<String> batches(Path file, int batchSize) throws IOException {
+        JsonArray entries;
+        try (var reader = Json.createReader(Files.newBufferedReader(file))) {
+            entries = reader.readArray();
+        }
+        var result = new ArrayList<String>();
+        for (int i = 0; i < entries.size(); i += batchSize) {
+            var batch = Json.createArrayBuilder();
+            entries.subList(i, Math.min(entries.size(), i + batchSize)).forEach(batch::add);
+            result.add(batch.build().toString());
+        }
+        return result;
+    }
+
+    /**
+     * Send requests at the rate for the duration
+     * @param record whether to record latency of the requests
+     */
+    void run(double rate, Duration duration, boolean record) {
+        var interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        var start = System.nanoTime();
+        var end = start + duration.toNanos();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                var scheduled = start + i * interval;
+                if (scheduled >= end) {
+                    break;
+                }
+                LockSupport.parkNanos(scheduled - System.nanoTime());
+                var body = batches.get((int) (i % batches.size()));
+                executor.execute(() -> send(body, scheduled, record));
+            }
+        }
+    }
+
+    private void send(String body, long scheduled, boolean record) {
+        var request = HttpRequest.newBuilder(classify).timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        int status;
+        try {
+            status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (record) {
+            latencies.add(System.nanoTime() - scheduled);
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+        }
+    }
+
+    void report(Duration duration) throws IOException, InterruptedException {
+        var sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.format("Requests: %d, %.1f/s, by status %s\n", sorted.length,
+                sorted.length / (double) duration.toSeconds(), statuses);
+        for (var p : new double[]{50, 90, 99, 99.9, 100}) {
+            System.out.format("  p%-5s %8.2f ms\n", p == 100 ? "max" : String.valueOf(p), percentile(sorted, p) / 1e6);
+        }
+        var stats = client.send(HttpRequest.newBuilder(classify.resolve("/stats")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        System.out.println("Server: " + stats.body());
+    }
+
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        var rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: ClassifyLoadTest <json file> [--url <server>] [--rate <requests/s>] "
+                    + "[--batch <entries>] [--duration <seconds>] [--warmup <seconds>]");
+            System.exit(1);
+        }
+        var url = URI.create("http://localhost:8080");
+        double rate = 100;
+        int batch = 10;
+        var duration = Duration.ofSeconds(30);
+        var warmup = Duration.ofSeconds(10);
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url" -> url = URI.create(args[++i]);
+                case "--rate" -> rate = Double.parseDouble(args[++i]);
+                case "--batch" -> batch = Integer.parseInt(args[++i]);
+                case "--duration" -> duration = Duration.ofSeconds(Long.parseLong(args[++i]));
+                case "--warmup" -> warmup = Duration.ofSeconds(Long.parseLong(args[++i]));
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        var test = new ClassifyLoadTest(url, batches(Path.of(args[0]), batch));
+        System.out.format("%d batches of %d entries, %.0f requests/s, warmup %s, measuring %s\n",
+                test.batches.size(), batch, rate, warmup, duration);
+        test.run(rate, warmup, false);
+        test.run(rate, duration, true);
+        test.report(duration);
+    }
+}
@@ -0,0 +1,142 @@
+package io.zeromagic.logclustering.benchmark;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.naivecluster.Cluster;
+import io.zeromagic.logclustering.naivecluster.EmbeddingScanIndex;
+import io.zeromagic.logclustering.naivecluster.InvertedTermIndex;
+import io.zeromagic.logclustering.naivecluster.LeaderIndex;
+import io.zeromagic.logclustering.naivecluster.LinearScanIndex;
+import io.zeromagic.logclustering.naivecluster.Metric;
+import io.zeromagic.logclustering.naivecluster.NaiveClustering;
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+import io.zeromagic.logclustering.vector.OptimizedTermVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * {@link NaiveClustering#add} into clustering already holding given number of clusters. Every member added is
+ * a perturbed copy of a random leader, so it joins an existing cluster and the number of clusters stays the same.
+ * The clustering is rebuilt for every iteration to keep the clusters small.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Xmx3g"})
+public class ClusteringBenchmark {
+    private static final int QUERIES = 4096;
+    private static final int DIMENSION = 384;
+    private static final int VOCABULARY = 50_000;
+    private static final int WORDS = 8;
+
+    @Param({"1000", "10000", "100000"})
+    public int clusters;
+
+    @Param({"terms", "embeddings"})
+    public String vectors;
+
+    /**
+     * {@code indexed} uses the index the application would, {@code linear} compares with every leader
+     */
+    @Param({"indexed", "linear"})
+    public String index;
+
+    private OptimizedTermVector[] termLeaders;
+    private OptimizedTermVector[] termQueries;
+    private EmbeddingVector[] embeddingLeaders;
+    private EmbeddingVector[] embeddingQueries;
+    // adds i-th query into the clustering of current iteration
+    private IntConsumer clustering;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        var rand = new Random(1);
+        if (vectors.equals("terms")) {
+            termLeaders = new OptimizedTermVector[clusters];
+            termQueries = new OptimizedTermVector[QUERIES];
+            var words = new String[clusters][];
+            for (int i = 0; i < clusters; i++) {
+                words[i] = new String[WORDS];
+                for (int w = 0; w < WORDS; w++) {
+                    words[i][w] = "w" + rand.nextInt(VOCABULARY);
+                }
+                termLeaders[i] = OptimizedTermVector.of(entry(words[i]));
+            }
+            for (int q = 0; q < QUERIES; q++) {
+                var query = words[rand.nextInt(clusters)].clone();
+                query[rand.nextInt(WORDS)] = "w" + rand.nextInt(VOCABULARY);
+                termQueries[q] = OptimizedTermVector.of(entry(query));
+            }
+        } else {
+            embeddingLeaders = new EmbeddingVector[clusters];
+            embeddingQueries = new EmbeddingVector[QUERIES];
+            for (int i = 0; i < clusters; i++) {
+                var vector = new float[DIMENSION];
+                for (int d = 0; d < DIMENSION; d++) {
+                    vector[d] = (float) rand.nextGaussian();
+                }
+                embeddingLeaders[i] = new EmbeddingVector(vector, null);
+            }
+            for (int q = 0; q < QUERIES; q++) {
+                var leader = embeddingLeaders[rand.nextInt(clusters)].vector();
+                var vector = new float[DIMENSION];
+                for (int d = 0; d < DIMENSION; d++) {
+                    vector[d] = leader[d] + 0.3f * (float) rand.nextGaussian();
+                }
+                embeddingQueries[q] = new EmbeddingVector(vector, null);
+            }
+        }
+    }
+
+    private static LogEntry entry(String[] words) {
+        return new HadoopCorpus.Entry(String.join(" ", words), null, Map.of(
+                LogEntry.MetadataKeys.LEVEL, "INFO",
+                LogEntry.MetadataKeys.LOGGER_NAME, "org.apache.hadoop.mapred.Task"));
+    }
+
+    @Setup(Level.Iteration)
+    public void seed() {
+        var linear = index.equals("linear");
+        if (vectors.equals("terms")) {
+            Metric<OptimizedTermVector> metric = OptimizedTermVector::cosineDistance;
+            clustering = seed(termLeaders, termQueries, metric, 0.35,
+                    linear ? new LinearScanIndex<>(metric) : new InvertedTermIndex());
+        } else {
+            Metric<EmbeddingVector> metric = EmbeddingVector::cosineDistance;
+            clustering = seed(embeddingLeaders, embeddingQueries, metric, 0.18,
+                    linear ? new LinearScanIndex<>(metric) : new EmbeddingScanIndex());
+        }
+    }
+
+    private static <T> IntConsumer seed(T[] leaders, T[] queries, Metric<T> metric, double threshold,
+                                        LeaderIndex<T> index) {
+        var clustering = new NaiveClustering<>(metric, threshold, index);
+        for (var leader : leaders) {
+            clustering.seed(Cluster.of(leader));
+        }
+        return i -> clustering.add(queries[i]);
+    }
+
+    @Benchmark
+    public void add() {
+        clustering.accept(next);
+        next = (next + 1) % QUERIES;
+    }
+}
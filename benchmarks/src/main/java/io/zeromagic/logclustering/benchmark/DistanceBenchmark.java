@@ -0,0 +1,95 @@
+package io.zeromagic.logclustering.benchmark;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.input.Tokenizer;
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+import io.zeromagic.logclustering.vector.OptimizedTermVector;
+import io.zeromagic.logclustering.vector.TermVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cosine distance of a pair of vectors. Embeddings are random, at dimensions of common embedding models,
+ * term vectors come from consecutive entries of the synthetic corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class DistanceBenchmark {
+    private static final int PAIRS = 1024;
+
+    @Param({"64", "384", "768", "1536"})
+    public int dimension;
+
+    private EmbeddingVector[] embeddings;
+    private TermVector[] terms;
+    private OptimizedTermVector[] optimizedTerms;
+    private int next;
+
+    @Setup
+    public void setup() {
+        var rand = new Random(1);
+        embeddings = new EmbeddingVector[PAIRS + 1];
+        for (int i = 0; i < embeddings.length; i++) {
+            var vector = new float[dimension];
+            for (int d = 0; d < dimension; d++) {
+                vector[d] = (float) rand.nextGaussian();
+            }
+            embeddings[i] = new EmbeddingVector(vector, null);
+            // cached, as it is for leaders during clustering
+            embeddings[i].magnitude();
+        }
+        var entries = new HadoopCorpus(1).entries(PAIRS + 1);
+        terms = new TermVector[PAIRS + 1];
+        optimizedTerms = new OptimizedTermVector[PAIRS + 1];
+        for (int i = 0; i < entries.size(); i++) {
+            LogEntry entry = entries.get(i);
+            terms[i] = TermVector.of(entry, Tokenizer.SIMPLE);
+            terms[i].magnitude();
+            optimizedTerms[i] = OptimizedTermVector.of(entry);
+            optimizedTerms[i].magnitude();
+        }
+    }
+
+    private int nextPair() {
+        var pair = next;
+        next = (next + 1) % PAIRS;
+        return pair;
+    }
+
+    @Benchmark
+    public double embeddingCosine() {
+        var i = nextPair();
+        return embeddings[i].cosineDistance(embeddings[i + 1]);
+    }
+
+    /**
+     * Term vectors don't depend on dimension, run with {@code -p dimension=64} to skip the repetitions.
+     */
+    @Benchmark
+    public double termVectorCosine() {
+        var i = nextPair();
+        return terms[i].cosineDistance(terms[i + 1]);
+    }
+
+    @Benchmark
+    public double optimizedTermVectorCosine() {
+        var i = nextPair();
+        return optimizedTerms[i].cosineDistance(optimizedTerms[i + 1]);
+    }
+}
@@ -0,0 +1,110 @@
+package io.zeromagic.logclustering.benchmark;
+
+import io.zeromagic.logclustering.input.LogEntry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic log entries resembling LogHub Hadoop dataset: a set of message templates with variable parts,
+ * some entries carrying stack traces. Entries are available either in memory or written out as log files
+ * readable by {@link io.zeromagic.logclustering.input.HadoopInputProducer}.
+ */
+public class HadoopCorpus {
+    private static final String[] TEMPLATES = {
+            "Created MRAppMaster for application appattempt_%d_%04d_%06d",
+            "Address change detected. Old: msra-sa-%d/10.190.173.%d:8030 New: msra-sa-%d:8030",
+            "Retrying connect to server: msra-sa-%d:%d. Already tried %d time(s); maxRetries=45",
+            "Task attempt_%d_%04d_m_%06d_0 done",
+            "Progress of TaskAttempt attempt_%d_%04d_m_%06d_0 is : 0.%d",
+            "ERROR IN CONTACTING RM.",
+            "Processing the event EventType: CONTAINER_REMOTE_LAUNCH for container container_%d_%04d_01_%06d taskAttempt attempt_%d_%04d_m_%06d_0",
+            "Shuffling to disk since %d is greater than maxSingleShuffleLimit (%d)",
+            "fetcher#%d about to shuffle output of map attempt_%d_%04d_m_%06d_0 decomp: %d len: %d to DISK",
+            "Read %d bytes from map-output for attempt_%d_%04d_m_%06d_0",
+    };
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "WARN", "ERROR"};
+    private static final String[] LOGGERS = {
+            "org.apache.hadoop.mapreduce.v2.app.MRAppMaster",
+            "org.apache.hadoop.ipc.Client",
+            "org.apache.hadoop.mapreduce.v2.app.rm.RMContainerAllocator",
+            "org.apache.hadoop.mapred.Task",
+            "org.apache.hadoop.mapreduce.task.reduce.Fetcher",
+    };
+    private static final String[] THREADS = {"main", "RMCommunicator Allocator", "fetcher#1", "IPC Server handler 0"};
+    private static final String STACK_TRACE = """
+            java.net.ConnectException: Connection refused
+            \tat sun.nio.ch.SocketChannelImpl.checkConnect(Native Method)
+            \tat sun.nio.ch.SocketChannelImpl.finishConnect(SocketChannelImpl.java:739)
+            \tat org.apache.hadoop.net.SocketIOWithTimeout.connect(SocketIOWithTimeout.java:206)
+            \tat org.apache.hadoop.net.NetUtils.connect(NetUtils.java:530)
+            \tat org.apache.hadoop.ipc.Client$Connection.setupConnection(Client.java:607)""";
+
+    record Entry(String body, String exception, Map<String, String> metadata) implements LogEntry {}
+
+    private final Random rand;
+
+    public HadoopCorpus(long seed) {
+        this.rand = new Random(seed);
+    }
+
+    public List<LogEntry> entries(int count) {
+        var result = new ArrayList<LogEntry>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(next(i));
+        }
+        return result;
+    }
+
+    /**
+     * Write {@code files} container logs of {@code entriesPerFile} entries each into directory {@code dir}.
+     * @return paths of the files written
+     */
+    public List<Path> writeTo(Path dir, int files, int entriesPerFile) throws IOException {
+        Files.createDirectories(dir);
+        var result = new ArrayList<Path>(files);
+        for (int f = 0; f < files; f++) {
+            var file = dir.resolve("container_1445144423722_0020_01_%06d.log".formatted(f));
+            try (var out = Files.newBufferedWriter(file)) {
+                for (int i = 0; i < entriesPerFile; i++) {
+                    var entry = next(i);
+                    var metadata = entry.metadata();
+                    out.write("%s %s [%s] %s: %s\n".formatted(metadata.get(LogEntry.MetadataKeys.TIMESTAMP),
+                            metadata.get(LogEntry.MetadataKeys.LEVEL), THREADS[rand.nextInt(THREADS.length)],
+                            metadata.get(LogEntry.MetadataKeys.LOGGER_NAME), entry.body()));
+                    if (entry.exception() != null) {
+                        out.write(entry.exception());
+                        out.write("\n");
+                    }
+                }
+            }
+            result.add(file);
+        }
+        return result;
+    }
+
+    private LogEntry next(int index) {
+        var template = TEMPLATES[rand.nextInt(TEMPLATES.length)];
+        var args = new Object[(int) template.chars().filter(c -> c == '%').count()];
+        for (int a = 0; a < args.length; a++) {
+            args[a] = rand.nextInt(10_000);
+        }
+        var exception = rand.nextInt(20) == 0 ? STACK_TRACE : null;
+        return new Entry(template.formatted(args), exception, Map.of(
+                LogEntry.MetadataKeys.TIMESTAMP, timestamp(index),
+                LogEntry.MetadataKeys.LEVEL, LEVELS[rand.nextInt(LEVELS.length)],
+                LogEntry.MetadataKeys.LOGGER_NAME, LOGGERS[rand.nextInt(LOGGERS.length)],
+                LogEntry.MetadataKeys.POD, "container_1445144423722_0020_01_%06d.log".formatted(rand.nextInt(50))));
+    }
+
+    private static String timestamp(int index) {
+        var seconds = index / 10;
+        return "2015-10-18 %02d:%02d:%02d,%03d".formatted(18 + seconds / 3600 % 6, seconds / 60 % 60, seconds % 60,
+                index % 10 * 100);
+    }
+}
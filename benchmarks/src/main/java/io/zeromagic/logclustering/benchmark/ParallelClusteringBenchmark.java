@@ -0,0 +1,88 @@
+package io.zeromagic.logclustering.benchmark;
+
+import io.zeromagic.logclustering.naivecluster.Metric;
+import io.zeromagic.logclustering.naivecluster.NaiveClusteringParallel;
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link NaiveClusteringParallel} clustering a burst of novel messages with 1 to 32 threads: embeddings scattered
+ * around many random centers, so that threads keep creating leaders concurrently.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ParallelClusteringBenchmark {
+    private static final Metric<EmbeddingVector> METRIC = EmbeddingVector::cosineDistance;
+    private static final double THRESHOLD = 0.1;
+    private static final int DIMENSION = 64;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int threads;
+
+    @Param({"2000"})
+    public int centers;
+
+    @Param({"50000"})
+    public int entries;
+
+    private List<EmbeddingVector> vectors;
+
+    @Setup
+    public void generate() {
+        var rand = new Random(3);
+        var centerVectors = new ArrayList<float[]>();
+        for (int i = 0; i < centers; i++) {
+            var center = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                center[d] = (float) rand.nextGaussian();
+            }
+            centerVectors.add(center);
+        }
+        vectors = new ArrayList<>();
+        for (int i = 0; i < entries; i++) {
+            var center = centerVectors.get(rand.nextInt(centers));
+            var v = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                v[d] = center[d] + (float) rand.nextGaussian() * 0.05f;
+            }
+            vectors.add(new EmbeddingVector(v, null));
+        }
+    }
+
+    @Benchmark
+    public int cluster() {
+        var clustering = new NaiveClusteringParallel<>(METRIC, THRESHOLD);
+        var next = new AtomicInteger();
+        try (var executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                executor.submit(() -> {
+                    for (int i; (i = next.getAndIncrement()) < vectors.size(); ) {
+                        clustering.add(vectors.get(i));
+                    }
+                });
+            }
+        }
+        return clustering.getClusters().size();
+    }
+}
@@ -0,0 +1,70 @@
+package io.zeromagic.logclustering.benchmark;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.input.Tokenizer;
+import io.zeromagic.logclustering.vector.OptimizedTermVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizing message body, and turning log entry into term vector, with the regex based {@link Tokenizer#SIMPLE}
+ * and with the streaming scanner. Run with {@code -prof gc} to compare allocation per entry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+    private List<LogEntry> entries;
+    private int next;
+
+    @Setup
+    public void setup() {
+        entries = new HadoopCorpus(1).entries(10_000);
+    }
+
+    private LogEntry nextEntry() {
+        var entry = entries.get(next);
+        next = (next + 1) % entries.size();
+        return entry;
+    }
+
+    @Benchmark
+    public int simpleSplit() {
+        int count = 0;
+        for (var ignored : Tokenizer.SIMPLE.tokenize(nextEntry().body())) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int streamingScan() {
+        var count = new int[1];
+        Tokenizer.scan(nextEntry().body(), (text, start, end) -> count[0]++);
+        return count[0];
+    }
+
+    @Benchmark
+    public OptimizedTermVector simpleTokenizer() {
+        return OptimizedTermVector.of(nextEntry(), Tokenizer.SIMPLE);
+    }
+
+    @Benchmark
+    public OptimizedTermVector streamingTokenizer() {
+        return OptimizedTermVector.of(nextEntry());
+    }
+}
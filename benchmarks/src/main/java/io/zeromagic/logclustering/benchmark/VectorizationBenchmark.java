@@ -0,0 +1,54 @@
+package io.zeromagic.logclustering.benchmark;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.input.Tokenizer;
+import io.zeromagic.logclustering.vector.OptimizedTermVector;
+import io.zeromagic.logclustering.vector.TermVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Map based {@link TermVector} against dictionary encoded {@link OptimizedTermVector}, both from the same tokens.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VectorizationBenchmark {
+    private List<LogEntry> entries;
+    private int next;
+
+    @Setup
+    public void setup() {
+        entries = new HadoopCorpus(1).entries(10_000);
+    }
+
+    private LogEntry nextEntry() {
+        var entry = entries.get(next);
+        next = (next + 1) % entries.size();
+        return entry;
+    }
+
+    @Benchmark
+    public TermVector termVector() {
+        return TermVector.of(nextEntry(), Tokenizer.SIMPLE);
+    }
+
+    @Benchmark
+    public OptimizedTermVector optimizedTermVector() {
+        return OptimizedTermVector.of(nextEntry(), Tokenizer.SIMPLE);
+    }
+}
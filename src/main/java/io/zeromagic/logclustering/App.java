@@ -3,25 +3,51 @@ package io.zeromagic.logclustering;
 import io.zeromagic.logclustering.input.HadoopInputProducer;
 import io.zeromagic.logclustering.input.InputProducer;
 import io.zeromagic.logclustering.input.JsonArrayInputProducer;
+import io.zeromagic.logclustering.input.MappedHadoopInputProducer;
+import io.zeromagic.logclustering.input.MappedJsonArrayInputProducer;
+import io.zeromagic.logclustering.input.StackTraceStemmer;
+import io.zeromagic.logclustering.naivecluster.HnswIndex;
 import io.zeromagic.logclustering.vector.Embedding;
+import io.zeromagic.logclustering.vector.EmbeddingCache;
+import io.zeromagic.logclustering.vector.HttpEmbeddingModel;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 /**
  * Hello world!
  */
 public class App {
+    // embeddings buffered for the output writer before vectorization waits for it
+    private static final int OUTPUT_BUFFER = 4096;
+
     public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
         InputProducer in = null;
+        Path hadoop = null;
+        Path logAnalytics = null;
+        var stemmer = new StackTraceStemmer(StackTraceStemmer.DEFAULT_PACKAGES);
+        int inputThreads = 0;
         boolean terms = false;
         boolean embeddings = false;
         Embedding.Model model = Embedding.Model.E5SmallV2Quantized;
+        HnswIndex.Config hnsw = null;
+        Path embeddingCache = null;
+        var http = HttpEmbeddingModel.Config.DEFAULT;
+        boolean binaryOutput = false;
+        int embeddingCacheCapacity = EmbeddingCache.DEFAULT_CAPACITY;
+        var options = Pipeline.Options.DEFAULT;
+        ClassifyServer.Config serve = null;
         for(int i=0; i<args.length; i++) {
             switch (args[i]) {
                 case "--terms" -> terms = true;
@@ -36,29 +62,116 @@ public class App {
                         }
                     }
                 }
-                case "--hadoop" -> in = new HadoopInputProducer(Path.of(args[++i]));
-                case "--loganalytics" -> in = new JsonArrayInputProducer(Path.of(args[++i]), s -> s.replaceAll("\\n\\s+at (?!fish.payara.cloud).+", ""));
+                case "--hnsw" -> {
+                    hnsw = HnswIndex.Config.DEFAULT;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        hnsw = HnswIndex.Config.parse(args[++i]);
+                    }
+                }
+                case "--embedding-cache" -> {
+                    embeddingCache = Path.of(args[++i]);
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        embeddingCacheCapacity = Integer.parseInt(args[++i]);
+                    }
+                }
+                case "--binary-output" -> binaryOutput = true;
+                case "--http-concurrency" -> http = http.withConcurrency(Integer.parseInt(args[++i]));
+                case "--compare-index" -> options = options.withCompareIndex(true);
+                case "--shards" -> options = options.withShards(Integer.parseInt(args[++i]));
+                case "--concurrent" -> options = options.withClusterThreads(Integer.parseInt(args[++i]));
+                case "--vectorize-threads" -> options = options.withVectorizeThreads(Integer.parseInt(args[++i]));
+                case "--token-budget" -> {
+                    var tokenBudget = TokenBudgetBatcher.Config.DEFAULT;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        tokenBudget = TokenBudgetBatcher.Config.parse(args[++i]);
+                    }
+                    options = options.withTokenBudget(tokenBudget);
+                }
+                case "--dedup" -> options = options.withDedupCapacity(Integer.parseInt(args[++i]));
+                case "--snapshot" -> options = options.withSnapshot(Path.of(args[++i]));
+                case "--serve" -> {
+                    serve = ClassifyServer.Config.DEFAULT;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        serve = ClassifyServer.Config.parse(args[++i]);
+                    }
+                }
+                case "--summary" -> {
+                    var samples = 20;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        samples = Integer.parseInt(args[++i]);
+                    }
+                    options = options.withSummarySamples(samples);
+                }
+                case "--hadoop" -> hadoop = Path.of(args[++i]);
+                case "--input-threads" -> inputThreads = Integer.parseInt(args[++i]);
+                case "--loganalytics" -> logAnalytics = Path.of(args[++i]);
+                case "--keep-frames" -> stemmer = StackTraceStemmer.parse(args[++i]);
                 default -> {
                     System.err.println("Unknown argument: " + args[i]);
                     System.exit(1);
                 }
             }
         }
+        if (hadoop != null) {
+            in = inputThreads > 0 ? new MappedHadoopInputProducer(hadoop, inputThreads) : new HadoopInputProducer(hadoop);
+        }
+        if (logAnalytics != null) {
+            in = inputThreads > 0 ? new MappedJsonArrayInputProducer(logAnalytics, stemmer, inputThreads)
+                    : new JsonArrayInputProducer(logAnalytics, stemmer);
+        }
+        if (serve != null) {
+            if (options.snapshot() == null || terms == embeddings) {
+                System.err.println("--serve requires --snapshot and exactly one of --terms or --embeddings");
+                System.exit(1);
+            }
+            ClassifyServer<?> server;
+            List<Embedding> models = List.of();
+            if (terms) {
+                server = ClassifyServer.start(TermVectorAdapter.INSTANCE, options.snapshot(), stemmer, serve);
+            } else {
+                models = modelInstances(new Embedding(model, http), options.vectorizeThreads());
+                server = ClassifyServer.start(new EmbeddingVectorAdapter(models, EmbeddingOutput.DISCARD, hnsw, null),
+                        options.snapshot(), stemmer, serve);
+            }
+            // the server's own threads keep running
+            var served = models;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                served.forEach(Embedding::close);
+            }));
+            return;
+        }
         var timestamp = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm").format(OffsetDateTime.now());
         if (terms) {
-            termVectorPipeline(in, Path.of("target/termvector_" + timestamp + "/"));
+            termVectorPipeline(in, Path.of("target/termvector_" + timestamp + "/"), options);
         }
         if (embeddings) {
-            embeddingPipeline(in, model, Path.of("target/embedding_" + timestamp + "/"));
+            embeddingPipeline(in, model, http, hnsw, embeddingCache, embeddingCacheCapacity, binaryOutput,
+                    Path.of("target/embedding_" + timestamp + "/"), options);
         }
         if (!terms && !embeddings) {
             System.out.println("""
-                    Usage: java -jar logclustering.jar [--terms|--embeddings [model name] < --hadoop <directory> | --loganalytics <json file>>
+                    Usage: java -jar logclustering.jar [--terms|--embeddings [model name] [--hnsw [m,efConstruction,efSearch]] [--embedding-cache <directory> [n]] [--http-concurrency <n>] [--binary-output]] [--compare-index] [--shards <n>|--concurrent <n>] [--dedup <n>] [--summary [n]] [--snapshot <file> [--serve [port[,p99Millis]]]] [--vectorize-threads <n>] [--token-budget [tokens,targetMillis]] < --hadoop <directory> | --loganalytics <json file> [--keep-frames <packages>]> [--input-threads <n>]
                     
                     --terms: process log entries into term vectors
                     --embeddings: process log entries into embeddings
+                    --hnsw: find closest embedding cluster with approximate HNSW index, default parameters 16,100,64
+                    --embedding-cache: reuse embeddings of earlier runs stored in the directory, keeping up to n per model
+                    --http-concurrency: requests in flight to Ollama or LM Studio, shared by all model instances, default 4
+                    --binary-output: write embeddings as binary columns loadable with numpy.memmap instead of JSON
+                    --compare-index: compare clusters with brute force clustering, output to index-agreement.txt
+                    --shards: cluster input in n threads and merge the results
+                    --concurrent: cluster input in n threads sharing the same clusters, comparing with every leader without index
+                    --vectorize-threads: vectorize n batches at a time, with a model instance each
+                    --token-budget: batch entries of similar length, sized by padded tokens adapting to batch latency, default 8192,1000
+                    --dedup: add repeated entries to the cluster of their first occurrence, remembering n distinct entries
+                    --summary: keep only statistics and n sampled entries per cluster, default 20, no cluster mappings
+                    --snapshot: start from clusters saved in the file by earlier runs, and save clusters of this run into it
+                    --serve: instead of clustering input, classify entries posted to local HTTP port against the snapshot, default 8080,50
                     --hadoop: process log entries from directory Hadoop log files
                     --loganalytics: process log entries from a JSON file in LogAnalytics format
+                    --keep-frames: comma separated package prefixes of stack frames to keep, default fish.payara.cloud
+                    --input-threads: parse input files memory mapped, in n threads
                     
                     The output will be written to target/termvector_<timestamp> or target/embedding_<timestamp>
                     """);
@@ -70,25 +183,52 @@ public class App {
         }
     }
 
-    static void termVectorPipeline(InputProducer input, Path output) throws IOException, InterruptedException, ExecutionException {
+    static void termVectorPipeline(InputProducer input, Path output, Pipeline.Options options) throws IOException, InterruptedException, ExecutionException {
         prepareOutputDirectory(output);
-        runPipeline(input, output, TermVectorAdapter.INSTANCE);
+        runPipeline(input, output, TermVectorAdapter.INSTANCE, options);
     }
 
-    static void embeddingPipeline(InputProducer input, Embedding.Model modelKind, Path output) throws IOException, InterruptedException, ExecutionException {
+    static void embeddingPipeline(InputProducer input, Embedding.Model modelKind, HttpEmbeddingModel.Config http,
+                                  HnswIndex.Config hnsw, Path cacheDirectory, int cacheCapacity, boolean binaryOutput,
+                                  Path output,
+                                  Pipeline.Options options) throws IOException, InterruptedException, ExecutionException {
         prepareOutputDirectory(output);
         System.out.println("Using embedding model: " + modelKind.name());
-        var model = new Embedding(modelKind);
-        try (var embeddingFile = new FileWriter(output.resolve("embeddings.json").toFile());
-             var out = new EmbeddingOutput(embeddingFile);
-        ) {
-            runPipeline(input, output, new EmbeddingVectorAdapter(model, out));
+        var model = new Embedding(modelKind, http);
+        var models = modelInstances(model, options.vectorizeThreads());
+        EmbeddingCache cache = null;
+        if (cacheDirectory != null) {
+            Files.createDirectories(cacheDirectory);
+            cache = EmbeddingCache.open(cacheDirectory.resolve(modelKind.name() + ".cache"), modelKind.name(),
+                    model.dimension(), cacheCapacity);
+        }
+        // cluster of every entry is only known without summary
+        EmbeddingOutput target = binaryOutput ? new BinaryEmbeddingOutput(output, options.summarySamples() == 0)
+                : new JsonEmbeddingOutput(new BufferedWriter(Channels.newWriter(FileChannel.open(
+                        output.resolve("embeddings.json"), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING), StandardCharsets.UTF_8), 1 << 20));
+        try (EmbeddingOutput out = new AsyncEmbeddingOutput(target, OUTPUT_BUFFER)) {
+            runPipeline(input, output, new EmbeddingVectorAdapter(models, out, hnsw, cache), options);
+        } finally {
+            models.forEach(Embedding::close);
+            if (cache != null) {
+                System.out.format("Embedding cache hits: %d, misses: %d\n", cache.hits(), cache.misses());
+                cache.close();
+            }
+        }
+    }
+
+    static List<Embedding> modelInstances(Embedding model, int count) {
+        var models = new ArrayList<Embedding>(List.of(model));
+        while (models.size() < count) {
+            models.add(model.copy());
         }
+        return models;
     }
 
     static <T> void runPipeline(InputProducer input, Path output,
-                                VectorAdapter<T> process) throws IOException, InterruptedException, ExecutionException {
-        var pipeline = new Pipeline<T>(process, 128);
+                                VectorAdapter<T> process, Pipeline.Options options) throws IOException, InterruptedException, ExecutionException {
+        var pipeline = new Pipeline<T>(process, 128, options);
         pipeline.run(input, output);
     }
 
@@ -0,0 +1,111 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.naivecluster.Cluster;
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passes embeddings to another output on a thread of its own, so that vectorization doesn't wait for the disk.
+ * <p>
+ * Vectors are put into a bounded ring buffer, and callers only block when it is full, until the writer takes some or
+ * fails. The writer thread takes everything buffered at once and hands it to the output as one group. Clusters are
+ * written after all buffered vectors, nothing can be written after that.
+ */
+class AsyncEmbeddingOutput implements EmbeddingOutput {
+    private static final int MAX_GROUP = 1024;
+    // how often a producer waiting for space checks whether the writer failed
+    private static final long FAILURE_CHECK_MILLIS = 40;
+
+    private final EmbeddingOutput out;
+    private final BlockingQueue<EmbeddingVector> buffer;
+    private final Thread writer;
+    private volatile boolean finished;
+    private volatile Throwable failure;
+
+    AsyncEmbeddingOutput(EmbeddingOutput out, int capacity) {
+        this.out = out;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.writer = Thread.ofPlatform().name("embedding-writer").daemon().start(this::drain);
+    }
+
+    private void drain() {
+        var group = new ArrayList<EmbeddingVector>(MAX_GROUP);
+        try {
+            while (true) {
+                var first = buffer.poll(40, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (finished && buffer.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                group.add(first);
+                buffer.drainTo(group, MAX_GROUP - 1);
+                out.writeAll(group);
+                group.clear();
+            }
+        } catch (Throwable t) {
+            failure = t;
+            // nothing takes the buffered vectors anymore, producers waiting for space see the failure
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public void write(EmbeddingVector vector) throws IOException {
+        checkFailure();
+        if (finished) {
+            throw new IllegalStateException("Output is already finished");
+        }
+        try {
+            while (!buffer.offer(vector, FAILURE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while buffering embedding");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Writing embeddings failed", failure);
+        }
+    }
+
+    /**
+     * Wait for the writer to write all buffered vectors
+     */
+    private void finish() throws IOException {
+        finished = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing embeddings");
+        }
+        checkFailure();
+    }
+
+    @Override
+    public void writeClusters(List<Cluster<EmbeddingVector>> clusters) throws IOException {
+        finish();
+        out.writeClusters(clusters);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+}
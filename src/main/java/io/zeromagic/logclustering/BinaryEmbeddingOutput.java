@@ -0,0 +1,217 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.naivecluster.Cluster;
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+import jakarta.json.Json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes embeddings into a directory of little-endian binary columns, one row per written vector, that can be
+ * loaded with {@code numpy.memmap}:
+ * <ul>
+ *     <li>{@code vectors.f32}: row-major float32 matrix of {@code rows x dimension}</li>
+ *     <li>{@code cluster.i32}: cluster of every row, same as ClusterIndex of {@code cluster-mappings.csv}. Only
+ *     written when cluster of every entry is known, i.e. not in summary mode</li>
+ *     <li>{@code entry_index.i32}: EntryIndex of the entry, -1 when the input has none</li>
+ *     <li>{@code level.i32}, {@code logger.i32}, {@code pod.i32}: codes into dictionaries in {@code meta.json}</li>
+ *     <li>{@code timestamp}, {@code message}, {@code exception}: UTF-8 strings concatenated in {@code .utf8},
+ *     string of row i spans bytes {@code offsets[i]..offsets[i+1]} of int64 {@code .offsets}. Missing values are
+ *     empty</li>
+ * </ul>
+ * {@code meta.json} holds number of rows, dimension and the dictionaries, and is written on close.
+ */
+class BinaryEmbeddingOutput implements EmbeddingOutput {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path directory;
+    private final Column vectors;
+    private final Column entryIndex;
+    private final Map<String, Dictionary> dictionaries = new LinkedHashMap<>();
+    private final Map<String, Strings> strings = new LinkedHashMap<>();
+    // row of every written entry, to find rows of cluster members. Null without cluster column, as it holds every entry
+    private final Map<LogEntry, Integer> rows;
+    private int rowCount;
+    private int dimension = -1;
+
+    /**
+     * @param clusterColumn whether {@link #writeClusters} will be called to write {@code cluster.i32}
+     */
+    BinaryEmbeddingOutput(Path directory, boolean clusterColumn) throws IOException {
+        this.directory = directory;
+        this.rows = clusterColumn ? new IdentityHashMap<>() : null;
+        this.vectors = new Column(directory.resolve("vectors.f32"));
+        this.entryIndex = new Column(directory.resolve("entry_index.i32"));
+        dictionaries.put("level", new Dictionary(new Column(directory.resolve("level.i32"))));
+        dictionaries.put("logger", new Dictionary(new Column(directory.resolve("logger.i32"))));
+        dictionaries.put("pod", new Dictionary(new Column(directory.resolve("pod.i32"))));
+        for (var name : List.of("timestamp", "message", "exception")) {
+            strings.put(name, new Strings(directory, name));
+        }
+    }
+
+    @Override
+    public synchronized void write(EmbeddingVector vector) throws IOException {
+        var v = vector.vector();
+        if (dimension < 0) {
+            dimension = v.length;
+        } else if (v.length != dimension) {
+            throw new IOException("Expected vector of dimension %d, got %d".formatted(dimension, v.length));
+        }
+        var entry = vector.entry();
+        var m = entry.metadata();
+        if (rows != null) {
+            rows.put(entry, rowCount);
+        }
+        rowCount++;
+        for (var f : v) {
+            vectors.ensure(Float.BYTES).putFloat(f);
+        }
+        var index = m.get("EntryIndex");
+        entryIndex.ensure(Integer.BYTES).putInt(index == null ? -1 : Integer.parseInt(index));
+        dictionaries.get("level").write(m.get(LogEntry.MetadataKeys.LEVEL));
+        dictionaries.get("logger").write(m.get(LogEntry.MetadataKeys.LOGGER_NAME));
+        dictionaries.get("pod").write(m.get(LogEntry.MetadataKeys.POD));
+        strings.get("timestamp").write(m.get(LogEntry.MetadataKeys.TIMESTAMP));
+        strings.get("message").write(entry.body());
+        strings.get("exception").write(entry.exception());
+    }
+
+    @Override
+    public synchronized void writeClusters(List<Cluster<EmbeddingVector>> clusters) throws IOException {
+        if (rows == null) {
+            throw new IllegalStateException("Output was created without cluster column");
+        }
+        var ids = new int[rowCount];
+        Arrays.fill(ids, -1);
+        for (int i = 0; i < clusters.size(); i++) {
+            for (var member : clusters.get(i).members()) {
+                var row = rows.get(member.entry());
+                if (row != null) {
+                    ids[row] = i;
+                }
+            }
+        }
+        try (var column = new Column(directory.resolve("cluster.i32"))) {
+            for (var id : ids) {
+                column.ensure(Integer.BYTES).putInt(id);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        vectors.close();
+        entryIndex.close();
+        var dicts = Json.createObjectBuilder();
+        for (var d : dictionaries.entrySet()) {
+            d.getValue().column.close();
+            var values = Json.createArrayBuilder();
+            d.getValue().codes.keySet().forEach(values::add);
+            dicts.add(d.getKey(), values);
+        }
+        for (var s : strings.values()) {
+            s.close();
+        }
+        var meta = Json.createObjectBuilder()
+                .add("rows", rowCount)
+                .add("dimension", Math.max(dimension, 0))
+                .add("dictionaries", dicts)
+                .build();
+        Files.writeString(directory.resolve("meta.json"), meta.toString());
+    }
+
+    /**
+     * Binary file written through a large buffer
+     */
+    private static final class Column implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        Column(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            for (int i = 0; i < bytes.length; ) {
+                var length = Math.min(ensure(1).remaining(), bytes.length - i);
+                buffer.put(bytes, i, length);
+                i += length;
+            }
+            position += bytes.length;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+
+    private static final class Dictionary {
+        private final Column column;
+        private final Map<String, Integer> codes = new LinkedHashMap<>();
+
+        Dictionary(Column column) {
+            this.column = column;
+        }
+
+        void write(String value) throws IOException {
+            var code = codes.computeIfAbsent(value == null ? "" : value, k -> codes.size());
+            column.ensure(Integer.BYTES).putInt(code);
+        }
+    }
+
+    private static final class Strings {
+        private final Column offsets;
+        private final Column data;
+
+        Strings(Path directory, String name) throws IOException {
+            this.offsets = new Column(directory.resolve(name + ".offsets"));
+            this.data = new Column(directory.resolve(name + ".utf8"));
+            offsets.ensure(Long.BYTES).putLong(0);
+        }
+
+        void write(String value) throws IOException {
+            if (value != null) {
+                data.write(value.getBytes(StandardCharsets.UTF_8));
+            }
+            offsets.ensure(Long.BYTES).putLong(data.position);
+        }
+
+        void close() throws IOException {
+            offsets.close();
+            data.close();
+        }
+    }
+}
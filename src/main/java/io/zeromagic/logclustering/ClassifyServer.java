@@ -0,0 +1,306 @@
+package io.zeromagic.logclustering;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.zeromagic.logclustering.input.JsonArrayInputProducer;
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.naivecluster.Cluster;
+import io.zeromagic.logclustering.naivecluster.LeaderIndex;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.stream.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Assigns log entries to clusters of a snapshot over HTTP, without changing the clusters.
+ * <p>
+ * {@code POST /classify} takes a JSON array of entries in LogAnalytics format, and responds with cluster of every
+ * entry, identified by position of its leader in the snapshot, and the distance to the leader. Entries not under the
+ * threshold of any leader get cluster -1. {@code POST /reload} reads the snapshot file again, {@code GET /stats}
+ * reports latency percentiles of the last one to two minutes.
+ * <p>
+ * Requests run on virtual threads. Leaders and their index form an immutable model behind an atomic reference:
+ * a request uses the model current when it started, reload builds the next one aside and swaps it in, so requests
+ * never wait for a reload. Only a request per processor classifies at a time, and a request that cannot start
+ * within the p99 target is rejected with 503, rather than making the queue longer for everyone.
+ */
+final class ClassifyServer<T> implements AutoCloseable {
+    // larger batches are rejected, as their latency alone would miss the target
+    static final int MAX_BATCH = 10_000;
+    // leaders looked up after loading, so that the first requests don't run interpreted code
+    private static final int WARMUP = 1000;
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * @param port      local port to listen on, 0 for any free one
+     * @param p99Millis target of 99th percentile of latency of classify requests
+     */
+    record Config(int port, int p99Millis) {
+        static final Config DEFAULT = new Config(8080, 50);
+
+        Config {
+            if (port < 0 || port > 65535 || p99Millis < 1) {
+                throw new IllegalArgumentException("Invalid server port=%d, p99Millis=%d".formatted(port, p99Millis));
+            }
+        }
+
+        /**
+         * Parse configuration in form {@code port[,p99Millis]}
+         */
+        static Config parse(String spec) {
+            var parts = spec.split(",");
+            if (parts.length > 2) {
+                throw new IllegalArgumentException("Expected port[,p99Millis] but got " + spec);
+            }
+            return new Config(Integer.parseInt(parts[0].trim()),
+                    parts.length == 2 ? Integer.parseInt(parts[1].trim()) : DEFAULT.p99Millis());
+        }
+    }
+
+    /**
+     * Leaders of a snapshot, numbered in snapshot order
+     */
+    private record Model<T>(int generation, LeaderIndex<T> index, Map<Cluster<T>, Integer> ids) {}
+
+    /**
+     * Latencies of the minute started at start, and of the minute before
+     */
+    private record Window(long start, LatencyHistogram current, LatencyHistogram previous) {}
+
+    private final VectorAdapter<T> adapter;
+    private final ClusterSnapshot.Codec<T> codec;
+    private final Path snapshot;
+    private final Function<String, String> stackTraceStemmer;
+    private final Config config;
+    private final AtomicReference<Model<T>> model = new AtomicReference<>();
+    private final Semaphore classifying = new Semaphore(Runtime.getRuntime().availableProcessors());
+    private final AtomicReference<Window> latency = new AtomicReference<>(
+            new Window(System.nanoTime(), new LatencyHistogram(), new LatencyHistogram()));
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong overTarget = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpServer server;
+
+    private ClassifyServer(VectorAdapter<T> adapter, Path snapshot, Function<String, String> stackTraceStemmer,
+                           Config config) throws IOException {
+        this.adapter = adapter;
+        this.codec = adapter.snapshotCodec();
+        if (codec == null) {
+            throw new IllegalArgumentException("Vectors of " + adapter + " cannot be loaded from snapshot");
+        }
+        this.snapshot = snapshot;
+        this.stackTraceStemmer = stackTraceStemmer;
+        this.config = config;
+        model.set(load(1));
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), config.port()), 0);
+        server.setExecutor(executor);
+        server.createContext("/classify", exchange -> handle(exchange, "POST", this::classify));
+        server.createContext("/reload", exchange -> handle(exchange, "POST", this::reload));
+        server.createContext("/stats", exchange -> handle(exchange, "GET", this::stats));
+    }
+
+    /**
+     * Load the snapshot and start listening
+     */
+    static <T> ClassifyServer<T> start(VectorAdapter<T> adapter, Path snapshot,
+                                       Function<String, String> stackTraceStemmer, Config config) throws IOException {
+        var server = new ClassifyServer<>(adapter, snapshot, stackTraceStemmer, config);
+        server.server.start();
+        System.out.format("Classifying into %d clusters at http://%s:%d/classify, p99 target %d ms\n",
+                server.model.get().ids().size(), InetAddress.getLoopbackAddress().getHostAddress(), server.port(),
+                config.p99Millis());
+        return server;
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    private Model<T> load(int generation) throws IOException {
+        var start = System.nanoTime();
+        var leaders = ClusterSnapshot.read(snapshot, codec).check(codec.model(), adapter.threshold()).leaders();
+        var index = adapter.leaderIndex();
+        var ids = new IdentityHashMap<Cluster<T>, Integer>(leaders.size() * 2);
+        for (var leader : leaders) {
+            // members are never added, smallest list there is
+            var cluster = Cluster.empty(leader, 1);
+            ids.put(cluster, ids.size());
+            index.add(cluster);
+        }
+        for (int i = 0; i < Math.min(WARMUP, leaders.size()); i++) {
+            index.findMatch(leaders.get(i), adapter.threshold());
+        }
+        System.out.format("Loaded %d clusters from %s in %d ms\n", leaders.size(), snapshot,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return new Model<>(generation, index, ids);
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals(method)) {
+                respond(exchange, 405, json -> json.write("error", "Use " + method));
+                return;
+            }
+            // within the resource block, as the exchange is closed before an outer catch runs
+            try {
+                handler.handle(exchange);
+            } catch (RuntimeException e) {
+                respond(exchange, 500, json -> json.write("error", String.valueOf(e)));
+            }
+        }
+    }
+
+    private void classify(HttpExchange exchange) throws IOException {
+        var start = System.nanoTime();
+        try {
+            List<LogEntry> batch;
+            try (var reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                batch = JsonArrayInputProducer.readAll(reader, stackTraceStemmer);
+            } catch (JsonException e) {
+                respond(exchange, 400, json -> json.write("error", String.valueOf(e.getMessage())));
+                return;
+            }
+            if (batch.size() > MAX_BATCH) {
+                respond(exchange, 413, json -> json.write("error", "At most %d entries per request".formatted(MAX_BATCH)));
+                return;
+            }
+            if (!tryAcquire(start)) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, json -> json.write("error", "Over capacity"));
+                return;
+            }
+            var current = model.get();
+            var clusters = new int[batch.size()];
+            var distances = new double[batch.size()];
+            try {
+                var vectors = adapter.vectorizeLookup(batch);
+                for (int i = 0; i < clusters.length; i++) {
+                    var match = current.index().findMatch(vectors.get(i), adapter.threshold());
+                    clusters[i] = match.map(m -> current.ids().get(m.cluster())).orElse(-1);
+                    distances[i] = match.map(LeaderIndex.Match::distance).orElse(Double.NaN);
+                }
+            } finally {
+                classifying.release();
+            }
+            entries.addAndGet(batch.size());
+            respond(exchange, 200, json -> {
+                json.write("generation", current.generation());
+                json.writeStartArray("results");
+                for (int i = 0; i < clusters.length; i++) {
+                    json.writeStartObject().write("cluster", clusters[i]);
+                    if (clusters[i] >= 0) {
+                        json.write("distance", distances[i]);
+                    }
+                    json.writeEnd();
+                }
+                json.writeEnd();
+            });
+        } finally {
+            var end = System.nanoTime();
+            var elapsed = end - start;
+            window(end).current().record(elapsed);
+            requests.incrementAndGet();
+            if (elapsed > TimeUnit.MILLISECONDS.toNanos(config.p99Millis())) {
+                overTarget.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Wait for a processor until the target latency since start of the request passes
+     */
+    private boolean tryAcquire(long start) {
+        var remaining = TimeUnit.MILLISECONDS.toNanos(config.p99Millis()) - (System.nanoTime() - start);
+        try {
+            return classifying.tryAcquire(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Window window(long now) {
+        var window = latency.get();
+        while (now - window.start() >= WINDOW_NANOS) {
+            var previous = now - window.start() < 2 * WINDOW_NANOS ? window.current() : new LatencyHistogram();
+            var next = new Window(now, new LatencyHistogram(), previous);
+            // a loser of the race records into the winner's window
+            window = latency.compareAndSet(window, next) ? next : latency.get();
+        }
+        return window;
+    }
+
+    private void reload(HttpExchange exchange) throws IOException {
+        Model<T> next;
+        // one reload at a time, requests keep using the current model meanwhile
+        synchronized (this) {
+            try {
+                next = load(model.get().generation() + 1);
+            } catch (IOException | IllegalArgumentException e) {
+                respond(exchange, 500, json -> json.write("error", String.valueOf(e.getMessage())));
+                return;
+            }
+            model.set(next);
+        }
+        respond(exchange, 200, json -> json.write("generation", next.generation()).write("clusters", next.ids().size()));
+    }
+
+    private void stats(HttpExchange exchange) throws IOException {
+        var current = model.get();
+        var window = window(System.nanoTime());
+        var recent = window.current().plus(window.previous());
+        respond(exchange, 200, json -> json.write("generation", current.generation())
+                .write("clusters", current.ids().size())
+                .write("requests", requests.get())
+                .write("entries", entries.get())
+                .write("rejected", rejected.get())
+                .write("recentRequests", recent.count())
+                .write("p50Millis", recent.percentile(50) / 1e6)
+                .write("p99Millis", recent.percentile(99) / 1e6)
+                .write("p99TargetMillis", config.p99Millis())
+                .write("overTarget", overTarget.get()));
+    }
+
+    private static void respond(HttpExchange exchange, int status, Consumer<JsonGenerator> body) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var json = Json.createGenerator(bytes)) {
+            json.writeStartObject();
+            body.accept(json);
+            json.writeEnd();
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.size());
+        bytes.writeTo(exchange.getResponseBody());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+}
@@ -0,0 +1,404 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.naivecluster.Cluster;
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+import io.zeromagic.logclustering.vector.OptimizedTermVector;
+import io.zeromagic.logclustering.vector.TermDictionary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Clustering state saved by a run, so that the next one can start from its leaders instead of from scratch.
+ * <p>
+ * The file is big-endian: a header with the model and threshold, a record of every leader with its statistics and
+ * source entry, then vectors of all leaders in format of the {@link Codec} of the vector type. Strings are an int
+ * length of UTF-8 bytes followed by the bytes, -1 for null. The file is read through a memory mapping, so it is
+ * limited to 2GB.
+ * <p>
+ * Source entries of the leaders are only skipped over on load, and decoded from the mapping when first used, as
+ * most leaders are never reported. Loaded leaders therefore keep the file mapped.
+ *
+ * @param model      model the leaders were vectorized with, snapshot only applies to the same one
+ * @param threshold  clustering threshold the leaders were found with
+ * @param leaders    leader vectors
+ * @param statistics statistics of the clusters of the leaders, over all runs
+ */
+record ClusterSnapshot<T>(String model, double threshold, List<T> leaders, List<Cluster.Statistics> statistics) {
+    private static final int MAGIC = 0x4c43534e;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Binary format of vectors of a kind
+     */
+    interface Codec<T> {
+        /**
+         * @return name of the model producing the vectors
+         */
+        String model();
+
+        void write(Output out, List<T> leaders) throws IOException;
+
+        /**
+         * @param entries source entries of the leaders, in order they were written
+         */
+        List<T> read(ByteBuffer in, List<LogEntry> entries) throws IOException;
+    }
+
+    /**
+     * Entry decoded from the file on first access
+     */
+    private static final class SnapshotEntry implements LogEntry {
+        private record Decoded(String body, String exception, Map<String, String> metadata) {}
+
+        private final ByteBuffer file;
+        private final int position;
+        private volatile Decoded decoded;
+
+        SnapshotEntry(ByteBuffer file, int position) {
+            this.file = file;
+            this.position = position;
+        }
+
+        private Decoded decoded() {
+            var result = decoded;
+            if (result == null) {
+                // racing threads decode the same entry
+                var in = file.duplicate().position(position);
+                var body = readString(in);
+                var exception = readString(in);
+                var metadataSize = in.getInt();
+                var metadata = new LinkedHashMap<String, String>(metadataSize * 2);
+                for (int m = 0; m < metadataSize; m++) {
+                    metadata.put(readString(in), readString(in));
+                }
+                decoded = result = new Decoded(body, exception, metadata);
+            }
+            return result;
+        }
+
+        @Override
+        public String body() {
+            return decoded().body();
+        }
+
+        @Override
+        public String exception() {
+            return decoded().exception();
+        }
+
+        @Override
+        public Map<String, String> metadata() {
+            return decoded().metadata();
+        }
+    }
+
+    /**
+     * Big-endian file written through a large buffer, arrays are copied in bulk
+     */
+    static final class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        private Output(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        private ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        void writeInt(int value) throws IOException {
+            ensure(Integer.BYTES).putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensure(Long.BYTES).putLong(value);
+        }
+
+        void writeDouble(double value) throws IOException {
+            ensure(Double.BYTES).putDouble(value);
+        }
+
+        void write(byte[] bytes) throws IOException {
+            for (int i = 0; i < bytes.length; ) {
+                var length = Math.min(ensure(1).remaining(), bytes.length - i);
+                buffer.put(bytes, i, length);
+                i += length;
+            }
+        }
+
+        void write(int[] values) throws IOException {
+            for (int i = 0; i < values.length; ) {
+                var length = Math.min(ensure(Integer.BYTES).remaining() / Integer.BYTES, values.length - i);
+                buffer.asIntBuffer().put(values, i, length);
+                buffer.position(buffer.position() + length * Integer.BYTES);
+                i += length;
+            }
+        }
+
+        void write(float[] values) throws IOException {
+            for (int i = 0; i < values.length; ) {
+                var length = Math.min(ensure(Float.BYTES).remaining() / Float.BYTES, values.length - i);
+                buffer.asFloatBuffer().put(values, i, length);
+                buffer.position(buffer.position() + length * Float.BYTES);
+                i += length;
+            }
+        }
+
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            write(bytes);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Write the snapshot into a new file, and replace the file with it
+     */
+    void write(Path file, Codec<T> codec, Function<T, LogEntry> entryExtractor) throws IOException {
+        var temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var out = new Output(temp)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeString(model);
+            out.writeDouble(threshold);
+            out.writeInt(leaders.size());
+            for (int i = 0; i < leaders.size(); i++) {
+                var s = statistics.get(i);
+                var stats = s.stats();
+                out.writeLong(s.count());
+                out.writeDouble(stats.average());
+                out.writeDouble(stats.stdDev());
+                out.writeDouble(stats.max());
+                out.writeString(s.firstTimestamp());
+                out.writeString(s.lastTimestamp());
+                var entry = entryExtractor.apply(leaders.get(i));
+                out.writeString(entry.body());
+                out.writeString(entry.exception());
+                var metadata = new ArrayList<>(entry.metadata().entrySet());
+                // index of the entry in its own run has no meaning in the next one
+                metadata.removeIf(e -> e.getKey().equals("EntryIndex"));
+                out.writeInt(metadata.size());
+                for (var m : metadata) {
+                    out.writeString(m.getKey());
+                    out.writeString(m.getValue());
+                }
+            }
+            codec.write(out, leaders);
+        }
+        // the previous snapshot may still be mapped by this process
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static <T> ClusterSnapshot<T> read(Path file, Codec<T> codec) throws IOException {
+        ByteBuffer in;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            throw new IOException(file + " is not a cluster snapshot");
+        }
+        var version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version %d of cluster snapshot %s".formatted(version, file));
+        }
+        var model = readString(in);
+        var threshold = in.getDouble();
+        var count = in.getInt();
+        var statistics = new ArrayList<Cluster.Statistics>(count);
+        var entries = new ArrayList<LogEntry>(count);
+        for (int i = 0; i < count; i++) {
+            var size = in.getLong();
+            var average = in.getDouble();
+            var stdDev = in.getDouble();
+            var max = in.getDouble();
+            statistics.add(Cluster.Statistics.restore(size, new Cluster.Stats(average, max, stdDev), readString(in),
+                    readString(in)));
+            entries.add(new SnapshotEntry(in, in.position()));
+            skipString(in);
+            skipString(in);
+            for (int m = in.getInt(); m > 0; m--) {
+                skipString(in);
+                skipString(in);
+            }
+        }
+        return new ClusterSnapshot<>(model, threshold, codec.read(in, entries), statistics);
+    }
+
+    /**
+     * Verify the snapshot was made with the same model and threshold
+     */
+    ClusterSnapshot<T> check(String model, double threshold) {
+        if (!this.model.equals(model) || this.threshold != threshold) {
+            throw new IllegalArgumentException("Snapshot of model %s with threshold %s cannot be used with %s and %s"
+                    .formatted(this.model, this.threshold, model, threshold));
+        }
+        return this;
+    }
+
+    private static void skipString(ByteBuffer in) {
+        var length = in.getInt();
+        if (length > 0) {
+            in.position(in.position() + length);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        var length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Term vectors: terms used by the leaders, then ids and frequencies of every leader. Ids are local to the
+     * snapshot and mapped to the term dictionary on load.
+     */
+    static final Codec<OptimizedTermVector> TERMS = new Codec<>() {
+        @Override
+        public String model() {
+            return "terms";
+        }
+
+        @Override
+        public void write(Output out, List<OptimizedTermVector> leaders) throws IOException {
+            // local ids in order of dictionary ids, so that ids of a vector stay ascending
+            var used = leaders.stream().flatMapToInt(v -> Arrays.stream(v.ids())).distinct().sorted().toArray();
+            var local = new int[used.length == 0 ? 0 : used[used.length - 1] + 1];
+            out.writeInt(used.length);
+            for (int i = 0; i < used.length; i++) {
+                local[used[i]] = i;
+                out.writeString(TermDictionary.SHARED.term(used[i]));
+            }
+            for (var leader : leaders) {
+                var ids = new int[leader.ids().length];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = local[leader.ids()[i]];
+                }
+                out.writeInt(ids.length);
+                out.write(ids);
+                out.write(leader.freqs());
+            }
+        }
+
+        @Override
+        public List<OptimizedTermVector> read(ByteBuffer in, List<LogEntry> entries) {
+            var ids = new int[in.getInt()];
+            var ascending = true;
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = TermDictionary.SHARED.id(readString(in));
+                ascending &= i == 0 || ids[i] > ids[i - 1];
+            }
+            var result = new ArrayList<OptimizedTermVector>(entries.size());
+            var values = in.asIntBuffer();
+            for (var entry : entries) {
+                var size = values.get();
+                var termIds = new int[size];
+                var freqs = new int[size];
+                values.get(termIds);
+                values.get(freqs);
+                for (int i = 0; i < size; i++) {
+                    termIds[i] = ids[termIds[i]];
+                }
+                if (!ascending) {
+                    sort(termIds, freqs);
+                }
+                result.add(new OptimizedTermVector(termIds, freqs, entry));
+            }
+            in.position(in.position() + values.position() * Integer.BYTES);
+            return result;
+        }
+
+        private static void sort(int[] ids, int[] freqs) {
+            var packed = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                packed[i] = (long) ids[i] << 32 | freqs[i];
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = (int) (packed[i] >>> 32);
+                freqs[i] = (int) packed[i];
+            }
+        }
+    };
+
+    /**
+     * Embeddings: dimension, then vectors of all leaders as a row-major float matrix
+     */
+    static Codec<EmbeddingVector> embeddings(String model, int dimension) {
+        return new Codec<>() {
+            @Override
+            public String model() {
+                return model;
+            }
+
+            @Override
+            public void write(Output out, List<EmbeddingVector> leaders) throws IOException {
+                out.writeInt(dimension);
+                for (var leader : leaders) {
+                    out.write(leader.vector());
+                }
+            }
+
+            @Override
+            public List<EmbeddingVector> read(ByteBuffer in, List<LogEntry> entries) throws IOException {
+                var stored = in.getInt();
+                if (stored != dimension) {
+                    throw new IOException("Snapshot has vectors of dimension %d, model has %d".formatted(stored, dimension));
+                }
+                var values = in.asFloatBuffer();
+                var result = new ArrayList<EmbeddingVector>(entries.size());
+                for (var entry : entries) {
+                    var vector = new float[dimension];
+                    values.get(vector);
+                    result.add(new EmbeddingVector(vector, entry));
+                }
+                in.position(in.position() + values.position() * Float.BYTES);
+                return result;
+            }
+        };
+    }
+}
@@ -0,0 +1,147 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.naivecluster.Cluster;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Recognizes entries repeating an earlier one in body, exception, level and logger, so that they can skip
+ * vectorization and leader lookup. Timestamp, pod and other metadata are ignored.
+ * <p>
+ * Entries are keyed by 64-bit hash of those fields, and verified against the first occurrence on hit. Only the most
+ * recently seen {@code capacity} distinct entries are remembered. Lookups are not thread-safe.
+ */
+class Deduplicator<T> {
+    /**
+     * First occurrence of an entry. Vector is set once the entry is vectorized, cluster and distance from its
+     * leader once it is clustered.
+     */
+    static final class Slot<T> {
+        private final LogEntry entry;
+        private T vector;
+        private double distance;
+        private volatile Cluster<T> cluster;
+
+        private Slot(LogEntry entry) {
+            this.entry = entry;
+        }
+
+        T vector() {
+            return vector;
+        }
+
+        void vector(T vector) {
+            this.vector = vector;
+        }
+
+        Cluster<T> cluster() {
+            return cluster;
+        }
+
+        double distance() {
+            return distance;
+        }
+
+        void cluster(Cluster<T> cluster, double distance) {
+            // published by the volatile write of cluster
+            this.distance = distance;
+            this.cluster = cluster;
+        }
+    }
+
+    /**
+     * @param slot  slot of the first occurrence
+     * @param first whether the entry is the first occurrence itself
+     */
+    record Lookup<T>(Slot<T> slot, boolean first) {}
+
+    private final Map<Long, Slot<T>> slots;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    Deduplicator(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        this.slots = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Slot<T>> eldest) {
+                if (size() > capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    Lookup<T> lookup(LogEntry entry) {
+        var key = hash(entry);
+        var slot = slots.get(key);
+        if (slot != null && sameContent(slot.entry, entry)) {
+            hits++;
+            return new Lookup<>(slot, false);
+        }
+        // on hash collision the newer entry takes over the slot
+        misses++;
+        slot = new Slot<>(entry);
+        slots.put(key, slot);
+        return new Lookup<>(slot, true);
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+
+    long evictions() {
+        return evictions;
+    }
+
+    static long hash(LogEntry entry) {
+        var m = entry.metadata();
+        long h = 0;
+        h = hash(h, entry.body());
+        h = hash(h, entry.exception());
+        h = hash(h, m.get(LogEntry.MetadataKeys.LEVEL));
+        h = hash(h, m.get(LogEntry.MetadataKeys.LOGGER_NAME));
+        return mix(h);
+    }
+
+    private static long hash(long h, String s) {
+        if (s == null) {
+            return h * 0x9E3779B97F4A7C15L + 1;
+        }
+        // length separates the fields, so that moving text from one field to the next changes the hash
+        h = h * 0x9E3779B97F4A7C15L + s.length() + 2;
+        for (int i = 0; i < s.length(); i++) {
+            h = h * 31 + s.charAt(i);
+        }
+        return h;
+    }
+
+    // finalizer of MurmurHash3
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static boolean sameContent(LogEntry a, LogEntry b) {
+        var ma = a.metadata();
+        var mb = b.metadata();
+        return Objects.equals(a.body(), b.body()) && Objects.equals(a.exception(), b.exception())
+                && Objects.equals(ma.get(LogEntry.MetadataKeys.LEVEL), mb.get(LogEntry.MetadataKeys.LEVEL))
+                && Objects.equals(ma.get(LogEntry.MetadataKeys.LOGGER_NAME), mb.get(LogEntry.MetadataKeys.LOGGER_NAME));
+    }
+}
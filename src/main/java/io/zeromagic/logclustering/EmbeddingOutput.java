@@ -1,59 +1,44 @@
 package io.zeromagic.logclustering;
 
+import io.zeromagic.logclustering.naivecluster.Cluster;
 import io.zeromagic.logclustering.vector.EmbeddingVector;
-import jakarta.json.Json;
-import jakarta.json.stream.JsonGenerator;
 
-import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.Writer;
+import java.util.List;
 
-class EmbeddingOutput implements Closeable {
+/**
+ * Output of computed embeddings, for analysis outside of the pipeline. Thread-safe.
+ */
+interface EmbeddingOutput extends Closeable {
+    /**
+     * Output dropping all embeddings, when they are only compared and not kept
+     */
+    EmbeddingOutput DISCARD = new EmbeddingOutput() {
+        @Override
+        public void write(EmbeddingVector vector) {
+        }
 
-    private final JsonGenerator generator;
-    private final Writer writer;
+        @Override
+        public void close() {
+        }
+    };
 
-    EmbeddingOutput(Writer writer) {
-        this.writer = writer;
-        this.generator = Json.createGenerator(writer);
-        generator.writeStartArray();
-    }
+    void write(EmbeddingVector vector) throws IOException;
 
-    synchronized void write(EmbeddingVector vector, Integer cluster) throws IOException {
-        try {
-            generator.writeStartObject();
-            var e = vector.entry();
-            var m = e.metadata();
-            generator.write("Timestamp", m.get("Timestamp"));
-            generator.write("Pod", m.get("Pod"));
-            generator.write("LoggerName", m.get("LoggerName"));
-            generator.write("Level", m.get("Level"));
-            if (e.body() != null) {
-                generator.write("Message", e.body());
-            }
-            if (e.exception() != null) {
-                generator.write("Exception", e.exception());
-            }
-            if (cluster != null) {
-                generator.write("Cluster", cluster);
-            }
-            generator.writeStartArray("Vector");
-            for (var f : vector.vector()) {
-                generator.write(f);
-            }
-            generator.writeEnd();
-            generator.writeEnd();
-            generator.flush();
-            writer.write("\n");
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Write a group of vectors at once, in order
+     */
+    default void writeAll(List<EmbeddingVector> vectors) throws IOException {
+        for (var v : vectors) {
+            write(v);
         }
     }
 
-    @Override
-    public void close() {
-        generator.writeEnd();
-        generator.close();
+    /**
+     * Record cluster of every written vector, once clustering is finished.
+     * @param clusters clusters identified by their position in the list
+     */
+    default void writeClusters(List<Cluster<EmbeddingVector>> clusters) throws IOException {
     }
 }
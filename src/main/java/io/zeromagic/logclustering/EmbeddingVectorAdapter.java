@@ -1,31 +1,63 @@
 package io.zeromagic.logclustering;
 
 import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.naivecluster.Cluster;
+import io.zeromagic.logclustering.naivecluster.EmbeddingScanIndex;
+import io.zeromagic.logclustering.naivecluster.HnswIndex;
+import io.zeromagic.logclustering.naivecluster.LeaderIndex;
 import io.zeromagic.logclustering.vector.Embedding;
+import io.zeromagic.logclustering.vector.EmbeddingCache;
 import io.zeromagic.logclustering.vector.EmbeddingVector;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
 
+/**
+ * Vectorizes entries with embedding models. Batches may be vectorized concurrently, each of them taking one of the
+ * model instances for itself.
+ */
 class EmbeddingVectorAdapter implements VectorAdapter<EmbeddingVector> {
     private final Embedding model;
+    private final BlockingQueue<Embedding> idleModels;
     private final EmbeddingOutput out;
+    private final HnswIndex.Config hnsw;
+    private final EmbeddingCache cache;
 
-    public EmbeddingVectorAdapter(Embedding model, EmbeddingOutput out) {
-        this.model = model;
+    public EmbeddingVectorAdapter(Embedding model, EmbeddingOutput out, HnswIndex.Config hnsw) {
+        this(List.of(model), out, hnsw, null);
+    }
+
+    /**
+     * @param models instances of the same model, one for every thread vectorizing concurrently
+     * @param hnsw configuration of approximate leader index, or null for exact search
+     * @param cache cache of embeddings from previous runs, or null to always use the model
+     */
+    public EmbeddingVectorAdapter(List<Embedding> models, EmbeddingOutput out, HnswIndex.Config hnsw,
+                                  EmbeddingCache cache) {
+        this.model = models.get(0);
+        this.idleModels = new ArrayBlockingQueue<>(models.size(), false, models);
         this.out = out;
+        this.hnsw = hnsw;
+        this.cache = cache;
     }
 
     @Override
     public EmbeddingVector vectorize(LogEntry entry) {
-        var v = model.process(entry);
+        if (cache != null) {
+            return vectorizeBatch(List.of(entry)).get(0);
+        }
+        var v = withModel(m -> m.process(entry));
         writeEmbedding(v);
         return v;
     }
 
     private void writeEmbedding(EmbeddingVector v) {
         try {
-            out.write(v, null);
+            out.write(v);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -33,11 +65,75 @@ class EmbeddingVectorAdapter implements VectorAdapter<EmbeddingVector> {
 
     @Override
     public List<EmbeddingVector> vectorizeBatch(List<LogEntry> batch) {
-        var embeddingBatch = model.processBatch(batch);
+        var embeddingBatch = cache == null ? withModel(m -> m.processBatch(batch)) : processCached(batch);
         embeddingBatch.forEach(this::writeEmbedding);
         return embeddingBatch;
     }
 
+    @Override
+    public List<EmbeddingVector> vectorizeLookup(List<LogEntry> batch) {
+        return cache == null ? withModel(m -> m.processBatch(batch)) : processCached(batch);
+    }
+
+    private List<EmbeddingVector> processCached(List<LogEntry> batch) {
+        try {
+            var keys = batch.stream().map(model::cacheKey).toList();
+            var cached = cache.getAll(keys);
+            var misses = new ArrayList<LogEntry>();
+            var missKeys = new ArrayList<String>();
+            for (int i = 0; i < batch.size(); i++) {
+                if (cached[i] == null) {
+                    misses.add(batch.get(i));
+                    missKeys.add(keys.get(i));
+                }
+            }
+            if (misses.isEmpty()) {
+                return toVectors(batch, cached, List.of());
+            }
+            var computed = withModel(m -> m.processBatch(misses));
+            cache.putAll(missKeys, computed.stream().map(EmbeddingVector::vector).toList());
+            return toVectors(batch, cached, computed);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private <R> R withModel(Function<Embedding, R> work) {
+        Embedding instance;
+        try {
+            instance = idleModels.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a model", e);
+        }
+        try {
+            return work.apply(instance);
+        } finally {
+            idleModels.add(instance);
+        }
+    }
+
+    private static List<EmbeddingVector> toVectors(List<LogEntry> batch, float[][] cached, List<EmbeddingVector> computed) {
+        var result = new ArrayList<EmbeddingVector>(batch.size());
+        var next = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            result.add(cached[i] != null ? new EmbeddingVector(cached[i], batch.get(i)) : computed.get(next++));
+        }
+        return result;
+    }
+
+    @Override
+    public EmbeddingVector withEntry(EmbeddingVector vec, LogEntry entry) {
+        var v = new EmbeddingVector(vec.vector(), entry);
+        writeEmbedding(v);
+        return v;
+    }
+
+    @Override
+    public void clustered(List<Cluster<EmbeddingVector>> clusters) throws IOException {
+        out.writeClusters(clusters);
+    }
+
     @Override
     public double distance(EmbeddingVector vec1, EmbeddingVector vec2) {
         return vec1.cosineDistance(vec2);
@@ -52,4 +148,14 @@ class EmbeddingVectorAdapter implements VectorAdapter<EmbeddingVector> {
     public double threshold() {
         return model.threshold();
     }
+
+    @Override
+    public LeaderIndex<EmbeddingVector> leaderIndex() {
+        return hnsw == null ? new EmbeddingScanIndex() : new HnswIndex<>(this::distance, hnsw);
+    }
+
+    @Override
+    public ClusterSnapshot.Codec<EmbeddingVector> snapshotCodec() {
+        return ClusterSnapshot.embeddings(model.model().name(), model.dimension());
+    }
 }
@@ -0,0 +1,64 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.naivecluster.Cluster;
+import io.zeromagic.logclustering.naivecluster.NaiveClustering;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares clustering done with adapter's leader index against brute force clustering of the same vectors.
+ */
+class IndexAgreement {
+    static <T> void report(List<T> vectors, List<Cluster<T>> clusters, VectorAdapter<T> adapter, Path output) throws IOException {
+        var start = Instant.now();
+        var bruteForce = new NaiveClustering<>(adapter::distance, adapter.threshold());
+        vectors.forEach(bruteForce::add);
+        var duration = Duration.between(start, Instant.now());
+
+        var indexed = leaders(clusters);
+        var expected = leaders(bruteForce.getClusters());
+        int sameCluster = 0;
+        // entries that brute force put into existing cluster, but index didn't find it
+        int missedMatches = 0;
+        for (var v : vectors) {
+            var leader = indexed.get(v);
+            var expectedLeader = expected.get(v);
+            if (leader == expectedLeader) {
+                sameCluster++;
+            } else if (leader == v) {
+                missedMatches++;
+            }
+        }
+        var report = """
+                Index agreement with brute force
+                Entries:                   %8d
+                Clusters (index):          %8d
+                Clusters (brute force):    %8d
+                Same cluster leader:       %8d (%.2f%%)
+                Missed matches:            %8d (%.2f%%)
+                Brute force clustering took %s
+                """.formatted(vectors.size(), clusters.size(), bruteForce.getClusters().size(),
+                sameCluster, 100.0 * sameCluster / vectors.size(),
+                missedMatches, 100.0 * missedMatches / vectors.size(),
+                duration);
+        System.out.println(report);
+        Files.writeString(output.resolve("index-agreement.txt"), report);
+    }
+
+    private static <T> Map<T, T> leaders(List<Cluster<T>> clusters) {
+        var result = new IdentityHashMap<T, T>();
+        for (var cluster : clusters) {
+            for (var member : cluster.members()) {
+                result.put(member, cluster.leader());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,81 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.stream.JsonGenerator;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes embeddings as JSON array, an object with metadata and vector per line. The writer is only flushed on
+ * close, so a buffered writer turns the entries into few large writes.
+ */
+class JsonEmbeddingOutput implements EmbeddingOutput {
+    private static final List<String> METADATA = List.of("Timestamp", "Pod", "LoggerName", "Level");
+
+    private final JsonGenerator generator;
+    private final Writer writer;
+
+    JsonEmbeddingOutput(Writer writer) {
+        // generator flushes after every entry, so that line breaks get in between
+        this.writer = new FilterWriter(writer) {
+            @Override
+            public void flush() {
+            }
+        };
+        this.generator = Json.createGenerator(this.writer);
+        generator.writeStartArray();
+    }
+
+    @Override
+    public void write(EmbeddingVector vector) throws IOException {
+        write(vector, null);
+    }
+
+    synchronized void write(EmbeddingVector vector, Integer cluster) throws IOException {
+        try {
+            generator.writeStartObject();
+            var e = vector.entry();
+            var m = e.metadata();
+            for (var key : METADATA) {
+                var value = m.get(key);
+                if (value == null) {
+                    generator.writeNull(key);
+                } else {
+                    generator.write(key, value);
+                }
+            }
+            if (e.body() != null) {
+                generator.write("Message", e.body());
+            }
+            if (e.exception() != null) {
+                generator.write("Exception", e.exception());
+            }
+            if (cluster != null) {
+                generator.write("Cluster", cluster);
+            }
+            generator.writeStartArray("Vector");
+            for (var f : vector.vector()) {
+                generator.write(f);
+            }
+            generator.writeEnd();
+            generator.writeEnd();
+            generator.flush();
+            writer.write("\n");
+        } catch (JsonException e) {
+            // generator wraps failures of the writer
+            throw e.getCause() instanceof IOException io ? new UncheckedIOException(io) : e;
+        }
+    }
+
+    @Override
+    public void close() {
+        generator.writeEnd();
+        generator.close();
+    }
+}
@@ -2,43 +2,151 @@ package io.zeromagic.logclustering;
 
 import io.zeromagic.logclustering.input.InputProducer;
 import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.naivecluster.Cluster;
+import io.zeromagic.logclustering.naivecluster.Clustering;
+import io.zeromagic.logclustering.naivecluster.LinearScanIndex;
 import io.zeromagic.logclustering.naivecluster.NaiveClustering;
+import io.zeromagic.logclustering.naivecluster.NaiveClusteringParallel;
+import io.zeromagic.logclustering.naivecluster.ShardedClustering;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+record Pipeline<T>(VectorAdapter<T> adapter, int batchSize, Options options) {
+    // with token budget, batches are cut from windows of this many times batchSize entries
+    private static final int WINDOW_BATCHES = 8;
+
+    /**
+     * @param compareIndex compare the clustering with brute force clustering of the same vectors
+     * @param shards       number of threads clustering share of the input, merged at the end. 1 clusters everything
+     *                     in single thread
+     * @param clusterThreads number of threads adding into single concurrent clustering
+     * @param dedupCapacity number of distinct recent entries remembered for skipping exact duplicates, 0 disables
+     *                      the deduplication
+     * @param vectorizeThreads number of batches vectorized concurrently
+     * @param tokenBudget   batching of entries by length, null for batches of fixed number of entries
+     * @param summarySamples keep only counts, statistics and this many sampled members per cluster, so that memory
+     *                       doesn't grow with input. Cluster mappings are not written then. 0 keeps all members
+     * @param snapshot      file with clusters of earlier runs to start from, updated with clusters of this run.
+     *                      Null starts from scratch
+     */
+    record Options(boolean compareIndex, int shards, int clusterThreads, int dedupCapacity, int vectorizeThreads,
+                   TokenBudgetBatcher.Config tokenBudget, int summarySamples, Path snapshot) {
+        static final Options DEFAULT = new Options(false, 1, 1, 0, 1, null, 0, null);
+
+        Options {
+            if (shards > 1 && clusterThreads > 1) {
+                throw new IllegalArgumentException("Sharded and concurrent clustering cannot be combined");
+            }
+            if (summarySamples > 0 && compareIndex) {
+                throw new IllegalArgumentException("Index comparison needs all vectors, which summary doesn't keep");
+            }
+        }
+
+        Options withCompareIndex(boolean compareIndex) {
+            return new Options(compareIndex, shards, clusterThreads, dedupCapacity, vectorizeThreads, tokenBudget,
+                    summarySamples, snapshot);
+        }
+
+        Options withShards(int shards) {
+            return new Options(compareIndex, shards, clusterThreads, dedupCapacity, vectorizeThreads, tokenBudget,
+                    summarySamples, snapshot);
+        }
+
+        Options withClusterThreads(int clusterThreads) {
+            return new Options(compareIndex, shards, clusterThreads, dedupCapacity, vectorizeThreads, tokenBudget,
+                    summarySamples, snapshot);
+        }
+
+        Options withDedupCapacity(int dedupCapacity) {
+            return new Options(compareIndex, shards, clusterThreads, dedupCapacity, vectorizeThreads, tokenBudget,
+                    summarySamples, snapshot);
+        }
+
+        Options withVectorizeThreads(int vectorizeThreads) {
+            return new Options(compareIndex, shards, clusterThreads, dedupCapacity, vectorizeThreads, tokenBudget,
+                    summarySamples, snapshot);
+        }
+
+        Options withTokenBudget(TokenBudgetBatcher.Config tokenBudget) {
+            return new Options(compareIndex, shards, clusterThreads, dedupCapacity, vectorizeThreads, tokenBudget,
+                    summarySamples, snapshot);
+        }
+
+        Options withSummarySamples(int summarySamples) {
+            return new Options(compareIndex, shards, clusterThreads, dedupCapacity, vectorizeThreads, tokenBudget,
+                    summarySamples, snapshot);
+        }
+
+        Options withSnapshot(Path snapshot) {
+            return new Options(compareIndex, shards, clusterThreads, dedupCapacity, vectorizeThreads, tokenBudget,
+                    summarySamples, snapshot);
+        }
+    }
+
+    /**
+     * @param lookup result of deduplication, null when it is disabled
+     */
+    private record Vectorized<T>(T vector, Deduplicator.Lookup<T> lookup) {}
+
+    /**
+     * Batch being vectorized. With deduplication only first occurrences are vectorized.
+     */
+    private record PendingBatch<T>(List<LogEntry> entries, List<Deduplicator.Lookup<T>> lookups,
+                                   Future<List<T>> vectors) {}
+
+    Pipeline(VectorAdapter<T> adapter, int batchSize) {
+        this(adapter, batchSize, Options.DEFAULT);
+    }
 
-record Pipeline<T>(VectorAdapter<T> adapter, int batchSize) {
     void run(InputProducer input, Path output) throws IOException, InterruptedException, ExecutionException {
-        var clustering = new NaiveClustering<>(adapter::distance, adapter.threshold());
+        var clustering = createClustering();
+        var earlier = seed(clustering);
         var entryQueue = new ArrayBlockingQueue<LogEntry>(batchSize);
-        var processQueue = new ArrayBlockingQueue<List<T>>(batchSize);
+        var pendingQueue = new ArrayBlockingQueue<PendingBatch<T>>(2 * options.vectorizeThreads());
+        var processQueue = new ArrayBlockingQueue<List<Vectorized<T>>>(batchSize);
+        var dedup = options.dedupCapacity() > 0 ? new Deduplicator<T>(options.dedupCapacity()) : null;
+        var batcher = options.tokenBudget() == null ? null : new TokenBudgetBatcher(options.tokenBudget());
+        var windowSize = batcher == null ? batchSize : batchSize * WINDOW_BATCHES;
         var executors = Executors.newVirtualThreadPerTaskExecutor();
+        var vectorizers = Executors.newFixedThreadPool(options.vectorizeThreads(),
+                Thread.ofPlatform().name("vectorizer-", 0).daemon().factory());
+        var vectors = Collections.synchronizedList(new ArrayList<T>());
         var start = Instant.now();
 
         var parseTask = executors.submit(() -> input.produceTo(entryQueue::put));
 
         // feed input into a queue for possible parallel or batch processing
         var batchTask = executors.submit(() -> {
-            var buffer = new ArrayList<LogEntry>(batchSize);
+            var buffer = new ArrayList<LogEntry>(windowSize);
             int items = 0;
             while (true) {
                 var entry = entryQueue.poll(40, TimeUnit.MILLISECONDS);
                 if (entry != null) {
                     buffer.add(entry);
                 }
-                if ((entry == null && !buffer.isEmpty()) || buffer.size() == batchSize) {
+                if ((entry == null && !buffer.isEmpty()) || buffer.size() == windowSize) {
                     items += buffer.size();
-                    processQueue.put(adapter.vectorizeBatch(buffer));
+                    pendingQueue.put(submit(List.copyOf(buffer), dedup, batcher, vectorizers));
                     buffer.clear();
                 }
                 if (entry == null && parseTask.isDone() && entryQueue.isEmpty()) {
@@ -47,39 +155,273 @@ record Pipeline<T>(VectorAdapter<T> adapter, int batchSize) {
             }
         });
 
+        // batches are vectorized concurrently, pass them on to clustering in input order
+        var vectorizeTask = executors.submit(() -> {
+            int items = 0;
+            while (true) {
+                var pending = pendingQueue.poll(40, TimeUnit.MILLISECONDS);
+                if (pending == null) {
+                    if (batchTask.isDone() && pendingQueue.isEmpty()) {
+                        return items;
+                    }
+                } else {
+                    var batch = complete(pending);
+                    items += batch.size();
+                    processQueue.put(batch);
+                }
+            }
+        });
+
         // collect batches and submit to processor
-        // then cluster results in single thread
-        var clusterTask = executors.submit(() -> {
+        // then cluster results in single thread, or multiple ones for concurrent clustering
+        Callable<Integer> clusterWork = () -> {
             int items = 0;
             while (true) {
                 var batch = processQueue.poll(40, TimeUnit.MILLISECONDS);
                 if (batch == null) {
-                    if (batchTask.isDone() && processQueue.isEmpty()) {
+                    if (vectorizeTask.isDone() && processQueue.isEmpty()) {
                         return items;
                     }
                 } else {
                     items += batch.size();
-                    batch.forEach(clustering::add);
+                    for (var item : batch) {
+                        add(clustering, item);
+                    }
+                    if (options.compareIndex()) {
+                        vectors.addAll(batch.stream().map(Vectorized::vector).toList());
+                    }
                 }
             }
-        });
+        };
+        var clusterTasks = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < options.clusterThreads(); i++) {
+            clusterTasks.add(executors.submit(clusterWork));
+        }
 
-        var clusteredItems = clusterTask.get();
+        for (var clusterTask : clusterTasks) {
+            clusterTask.get();
+        }
+        var clusters = clustering.getClusters();
         var end = Instant.now();
+        vectorizers.shutdownNow();
+        // every stage is reported, and a single failed one fails the run
         var ok = checkForFailure("Parsing", parseTask);
-        ok = ok | checkForFailure("Vectorization", batchTask);
-        ok = ok | checkForFailure("Clustering", clusterTask);
+        ok &= checkForFailure("Batching", batchTask);
+        ok &= checkForFailure("Vectorization", vectorizeTask);
+        for (var clusterTask : clusterTasks) {
+            ok &= checkForFailure("Clustering", clusterTask);
+        }
         if (!ok) {
             System.out.println("Pipeline failed");
             System.exit(1);
         }
+        if (batcher != null) {
+            System.out.format("Token budget per batch: %d\n", batcher.budget());
+        }
+        if (dedup != null) {
+            var total = dedup.hits() + dedup.misses();
+            System.out.format("Duplicates: %d of %d entries (%.1f%%), evicted %d\n", dedup.hits(), total,
+                    total == 0 ? 0.0 : 100.0 * dedup.hits() / total, dedup.evictions());
+        }
         System.out.format("Clustering took %s\n", Duration.between(start, end));
         // refining didn't prove to improve the results that much
         //clustering.refine(3000, 1.1);
 
-        var report = new Report<>(clustering.getClusters(), adapter::entry, adapter::distance);
-        report.report(output, 20, 0.2);
-        report.outputClusterMappings(output);
+        if (options.snapshot() != null) {
+            saveSnapshot(clusters, earlier);
+        }
+        // clusters of earlier runs that got no entries in this one are left out
+        clusters = clusters.stream().filter(c -> c.statistics().count() > 0).toList();
+        var report = new Report<>(clusters, adapter::entry);
+        if (options.summarySamples() > 0) {
+            // cluster of every entry is not known, only the samples
+            report.report(output, 20, 0.2);
+            return;
+        }
+        // outputs only read the clusters, write them side by side
+        try (var writers = Executors.newVirtualThreadPerTaskExecutor()) {
+            var mappings = writers.submit(() -> {
+                report.outputClusterMappings(output);
+                return null;
+            });
+            var clustered = writers.submit(() -> {
+                adapter.clustered(report.clusters());
+                return null;
+            });
+            report.report(output, 20, 0.2);
+            mappings.get();
+            clustered.get();
+        }
+        if (options.compareIndex()) {
+            IndexAgreement.report(vectors, clusters, adapter, output);
+        }
+    }
+
+    private PendingBatch<T> submit(List<LogEntry> batch, Deduplicator<T> dedup, TokenBudgetBatcher batcher,
+                                   ExecutorService vectorizers) {
+        if (dedup == null) {
+            return new PendingBatch<>(batch, null, vectorize(batch, batcher, vectorizers));
+        }
+        var lookups = new ArrayList<Deduplicator.Lookup<T>>(batch.size());
+        var firsts = new ArrayList<LogEntry>();
+        for (var entry : batch) {
+            var lookup = dedup.lookup(entry);
+            lookups.add(lookup);
+            if (lookup.first()) {
+                firsts.add(entry);
+            }
+        }
+        return new PendingBatch<>(batch, lookups, firsts.isEmpty() ? CompletableFuture.completedFuture(List.of())
+                : vectorize(firsts, batcher, vectorizers));
+    }
+
+    private Future<List<T>> vectorize(List<LogEntry> entries, TokenBudgetBatcher batcher, ExecutorService vectorizers) {
+        if (batcher == null) {
+            return vectorizers.submit(() -> adapter.vectorizeBatch(entries));
+        }
+        var batches = batcher.split(entries);
+        var parts = new ArrayList<CompletableFuture<List<T>>>(batches.size());
+        for (var batch : batches) {
+            parts.add(CompletableFuture.supplyAsync(() -> {
+                var start = System.nanoTime();
+                var vectors = adapter.vectorizeBatch(Arrays.stream(batch.indexes()).mapToObj(entries::get).toList());
+                batcher.record(batch, System.nanoTime() - start);
+                return vectors;
+            }, vectorizers));
+        }
+        // put vectors of the length sorted batches back in order of the entries
+        return CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            var result = new ArrayList<T>(Collections.nCopies(entries.size(), null));
+            for (int p = 0; p < parts.size(); p++) {
+                var indexes = batches.get(p).indexes();
+                var vectors = parts.get(p).join();
+                for (int i = 0; i < indexes.length; i++) {
+                    result.set(indexes[i], vectors.get(i));
+                }
+            }
+            return result;
+        });
+    }
+
+    private List<Vectorized<T>> complete(PendingBatch<T> pending) throws InterruptedException, ExecutionException {
+        var vectors = pending.vectors().get();
+        if (pending.lookups() == null) {
+            return vectors.stream().map(v -> new Vectorized<T>(v, null)).toList();
+        }
+        var batch = pending.entries();
+        var result = new ArrayList<Vectorized<T>>(batch.size());
+        int next = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            var lookup = pending.lookups().get(i);
+            T vector;
+            if (lookup.first()) {
+                vector = vectors.get(next++);
+                lookup.slot().vector(vector);
+            } else {
+                // first occurrence precedes, in this batch or an earlier one completed before
+                vector = adapter.withEntry(lookup.slot().vector(), batch.get(i));
+            }
+            result.add(new Vectorized<>(vector, lookup));
+        }
+        return result;
+    }
+
+    private void add(Clustering<T> clustering, Vectorized<T> item) {
+        var lookup = item.lookup();
+        if (lookup == null) {
+            observe(clustering.add(item.vector()), item.vector());
+            return;
+        }
+        var slot = lookup.slot();
+        var cluster = lookup.first() ? null : slot.cluster();
+        if (cluster != null) {
+            // repeated entry goes where its first occurrence went, without looking up leaders
+            cluster.add(item.vector(), slot.distance());
+        } else {
+            // first occurrence, or its cluster is not known yet in concurrent or sharded clustering
+            cluster = clustering.add(item.vector());
+            if (cluster != null && slot.cluster() == null) {
+                slot.cluster(cluster, adapter.distance(cluster.leader(), item.vector()));
+            }
+        }
+        observe(cluster, item.vector());
+    }
+
+    /**
+     * Record timestamp of the member in statistics of its cluster. Sharded clustering doesn't know the cluster
+     * yet, and records it through its listener.
+     */
+    private void observe(Cluster<T> cluster, T member) {
+        if (cluster != null) {
+            cluster.statistics().timestamp(adapter.entry(member).metadata().get(LogEntry.MetadataKeys.TIMESTAMP));
+        }
+    }
+
+    /**
+     * Seed the clustering with leaders of the snapshot, when there is one
+     * @return statistics from earlier runs of the seeded clusters
+     */
+    private Map<Cluster<T>, Cluster.Statistics> seed(Clustering<T> clustering) throws IOException {
+        var earlier = new IdentityHashMap<Cluster<T>, Cluster.Statistics>();
+        if (options.snapshot() == null || !Files.exists(options.snapshot())) {
+            return earlier;
+        }
+        var start = System.nanoTime();
+        var snapshot = ClusterSnapshot.read(options.snapshot(), codec()).check(codec().model(), adapter.threshold());
+        for (int i = 0; i < snapshot.leaders().size(); i++) {
+            var cluster = Cluster.empty(snapshot.leaders().get(i), options.summarySamples());
+            clustering.seed(cluster);
+            earlier.put(cluster, snapshot.statistics().get(i));
+        }
+        System.out.format("Loaded %d clusters from %s in %d ms\n", snapshot.leaders().size(), options.snapshot(),
+                (System.nanoTime() - start) / 1_000_000);
+        return earlier;
+    }
+
+    private void saveSnapshot(List<Cluster<T>> clusters, Map<Cluster<T>, Cluster.Statistics> earlier) throws IOException {
+        var start = System.nanoTime();
+        var leaders = new ArrayList<T>(clusters.size());
+        var statistics = new ArrayList<Cluster.Statistics>(clusters.size());
+        for (var cluster : clusters) {
+            leaders.add(cluster.leader());
+            var total = new Cluster.Statistics();
+            var before = earlier.get(cluster);
+            if (before != null) {
+                total.merge(before);
+            }
+            total.merge(cluster.statistics());
+            statistics.add(total);
+        }
+        new ClusterSnapshot<>(codec().model(), adapter.threshold(), leaders, statistics)
+                .write(options.snapshot(), codec(), adapter::entry);
+        System.out.format("Saved %d clusters to %s in %d ms\n", clusters.size(), options.snapshot(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private ClusterSnapshot.Codec<T> codec() {
+        var codec = adapter.snapshotCodec();
+        if (codec == null) {
+            throw new IllegalArgumentException("Clusters of " + adapter.getClass().getSimpleName() + " cannot be saved");
+        }
+        return codec;
+    }
+
+    private Clustering<T> createClustering() {
+        var samples = options.summarySamples();
+        Function<T, Cluster<T>> newCluster = samples > 0 ? leader -> Cluster.sampled(leader, samples) : Cluster::of;
+        if (options.shards() > 1) {
+            return new ShardedClustering<>(adapter::distance, adapter.threshold(), adapter::leaderIndex, options.shards(),
+                    newCluster, this::observe);
+        }
+        if (options.clusterThreads() > 1) {
+            var index = adapter.leaderIndex();
+            if (!(index instanceof LinearScanIndex)) {
+                System.err.format("Warning: --concurrent compares every entry with every cluster leader, %s is not "
+                        + "used. Use --shards to keep it.\n", index.getClass().getSimpleName());
+            }
+            return new NaiveClusteringParallel<>(adapter::distance, adapter.threshold(), newCluster);
+        }
+        return new NaiveClustering<>(adapter::distance, adapter.threshold(), adapter.leaderIndex(), newCluster);
     }
 
     private boolean checkForFailure(String kind, Future<Integer> task) throws ExecutionException, InterruptedException {
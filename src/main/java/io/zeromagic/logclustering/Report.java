@@ -2,7 +2,6 @@ package io.zeromagic.logclustering;
 
 import io.zeromagic.logclustering.input.LogEntry;
 import io.zeromagic.logclustering.naivecluster.Cluster;
-import io.zeromagic.logclustering.naivecluster.Metric;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -11,6 +10,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Random;
 import java.util.function.Function;
 import java.util.stream.IntStream;
@@ -19,13 +19,25 @@ public class Report<T> {
     private final List<Cluster<T>> clustering;
     private final Function<T, LogEntry> entryExtractor;
     private final Random rand = new Random();
-    private final Metric<T> metric;
 
-    public Report(List<Cluster<T>> clustering, Function<T, LogEntry> entryExtractor, Metric<T> metric) {
+    public Report(List<Cluster<T>> clustering, Function<T, LogEntry> entryExtractor) {
         this.clustering = new ArrayList<>(clustering);
         this.entryExtractor = entryExtractor;
-        this.metric = metric;
-        Collections.sort(this.clustering, Comparator.comparingInt(c -> c.members().size()));
+        Collections.sort(this.clustering, Comparator.comparingInt(Report::size));
+    }
+
+    /**
+     * @return number of entries in the cluster, which may keep only a sample of them
+     */
+    private static int size(Cluster<?> cluster) {
+        return Math.toIntExact(cluster.statistics().count());
+    }
+
+    /**
+     * @return clusters in ascending order of size, the order of ClusterIndex of the cluster mappings
+     */
+    public List<Cluster<T>> clusters() {
+        return clustering;
     }
 
     public void report(Path output, int maxExamples, double sampleRate) throws IOException {
@@ -40,36 +52,38 @@ public class Report<T> {
             var index = 1;
             for (var cluster : clustering.reversed()) {
                 // pick at most sampleRate..maxExamples random examples from the cluster
-                var samples = Math.max(1, Math.min(Math.round(cluster.members().size() * sampleRate), maxExamples));
+                var samples = Math.max(1, Math.min(Math.round(size(cluster) * sampleRate), maxExamples));
+                // summary clusters only have a sample of members to pick from
+                samples = Math.min(samples, cluster.members().size());
 
                 var writer = reportWriter;
 
-                writeExamples(cluster, samples, writer, clustering.size()-index, cluster.distributionStats(metric));
+                writeExamples(cluster, samples, writer, clustering.size()-index, cluster.statistics().stats());
                 index++;
             }
         }
     }
     
     private void writeStats(Appendable out) throws IOException {
-        var totalMessages = clustering.stream().mapToInt(c -> c.members().size()).sum();
+        var totalMessages = clustering.stream().mapToInt(Report::size).sum();
         var totalClusters = clustering.size();
         var percentiles = new int[10];
         for (int i = 0; i < percentiles.length; i++) {
             var index = (int) Math.round((i + 1) * 0.1 * (clustering.size() - 1));
-            percentiles[i] = clustering.get(index).members().size();
+            percentiles[i] = size(clustering.get(index));
         }
         var entryPercentile = new int[10];
         int runningTotal = 0;
         var c = 0;
         for (var cluster : clustering) {
-            runningTotal += cluster.members().size();
+            runningTotal += size(cluster);
             int index = (totalMessages - runningTotal) * entryPercentile.length / totalMessages;
             for (int i = index; i < entryPercentile.length; i++) {
                 entryPercentile[i]++;
             }
         }
 
-        var top9clusterSizes = clustering.reversed().stream().limit(9).mapToInt(v -> v.members().size()).toArray();
+        var top9clusterSizes = clustering.reversed().stream().limit(9).mapToInt(Report::size).toArray();
         var restSize = totalMessages - IntStream.of(top9clusterSizes).sum();
 
         out.append("Total messages: %8d\n".formatted(totalMessages))
@@ -106,13 +120,10 @@ public class Report<T> {
     }
 
     private void writeExamples(Cluster<T> cluster, long samples, Appendable writer, int index, Cluster.Stats stats) throws IOException {
-        // todo: min and max timestamp, do we just assume that input is sorted by time?
-        var minTimestamp = cluster.members().stream().map(entryExtractor).map(e -> e.metadata().get("Timestamp"))
-                .min(Comparator.naturalOrder()).orElse("n/a");
-        var maxTimestamp = cluster.members().stream().map(entryExtractor).map(e -> e.metadata().get("Timestamp"))
-                .max(Comparator.naturalOrder()).orElse("n/a");
+        var minTimestamp = Objects.requireNonNullElse(cluster.statistics().firstTimestamp(), "n/a");
+        var maxTimestamp = Objects.requireNonNullElse(cluster.statistics().lastTimestamp(), "n/a");
         writer.append("\nCluster %d\n".formatted(index))
-              .append("Number of entries: %d\n".formatted(cluster.members().size()));
+              .append("Number of entries: %d\n".formatted(size(cluster)));
         writer.append("First timestamp:   %s\nLast timestamp:    %s\n".formatted(
                 minTimestamp,
                 maxTimestamp));
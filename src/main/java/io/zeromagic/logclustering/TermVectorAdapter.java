@@ -1,15 +1,28 @@
 package io.zeromagic.logclustering;
 
 import io.zeromagic.logclustering.input.LogEntry;
-import io.zeromagic.logclustering.input.Tokenizer;
+import io.zeromagic.logclustering.naivecluster.InvertedTermIndex;
+import io.zeromagic.logclustering.naivecluster.LeaderIndex;
 import io.zeromagic.logclustering.vector.OptimizedTermVector;
 
+import java.util.List;
+
 enum TermVectorAdapter implements VectorAdapter<OptimizedTermVector> {
     INSTANCE;
 
     @Override
     public OptimizedTermVector vectorize(LogEntry entry) {
-        return OptimizedTermVector.of(entry, Tokenizer.SIMPLE);
+        return OptimizedTermVector.of(entry);
+    }
+
+    @Override
+    public List<OptimizedTermVector> vectorizeLookup(List<LogEntry> batch) {
+        return batch.stream().map(OptimizedTermVector::lookup).toList();
+    }
+
+    @Override
+    public OptimizedTermVector withEntry(OptimizedTermVector vec, LogEntry entry) {
+        return new OptimizedTermVector(vec.ids(), vec.freqs(), entry);
     }
 
     @Override
@@ -26,4 +39,14 @@ enum TermVectorAdapter implements VectorAdapter<OptimizedTermVector> {
     public double threshold() {
         return 0.35;
     }
+
+    @Override
+    public LeaderIndex<OptimizedTermVector> leaderIndex() {
+        return new InvertedTermIndex();
+    }
+
+    @Override
+    public ClusterSnapshot.Codec<OptimizedTermVector> snapshotCodec() {
+        return ClusterSnapshot.TERMS;
+    }
 }
@@ -0,0 +1,109 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.input.LogEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Splits a window of entries into batches of entries with similar length. Model pads every sequence of a batch to the
+ * longest one, so mixing short messages with long stack traces wastes most of the work on padding.
+ * <p>
+ * Entries are sorted by estimated token count and cut into batches whose padded size, count times the longest entry,
+ * fits the token budget. The budget adapts to measured latency: it grows while batches finish faster than the target
+ * latency and shrinks when they take longer. Thread-safe.
+ */
+final class TokenBudgetBatcher {
+    // local models truncate longer input
+    private static final int MAX_TOKENS = 512;
+    // instruction prefix and metadata of the query
+    private static final int QUERY_TOKENS = 24;
+
+    /**
+     * @param tokens       initial budget of padded tokens per batch
+     * @param targetMillis latency of a batch the budget adapts to
+     */
+    record Config(int tokens, int targetMillis) {
+        static final Config DEFAULT = new Config(8192, 1000);
+
+        Config {
+            if (tokens < MAX_TOKENS || targetMillis < 1) {
+                throw new IllegalArgumentException("Invalid token budget tokens=%d, targetMillis=%d"
+                        .formatted(tokens, targetMillis));
+            }
+        }
+
+        /**
+         * Parse configuration in form {@code tokens[,targetMillis]}
+         */
+        static Config parse(String spec) {
+            var parts = spec.split(",");
+            if (parts.length > 2) {
+                throw new IllegalArgumentException("Expected tokens[,targetMillis] but got " + spec);
+            }
+            return new Config(Integer.parseInt(parts[0].trim()),
+                    parts.length == 2 ? Integer.parseInt(parts[1].trim()) : DEFAULT.targetMillis());
+        }
+    }
+
+    /**
+     * @param indexes      positions of the batch entries in the window
+     * @param paddedTokens estimated size of the batch after padding
+     */
+    record Batch(int[] indexes, int paddedTokens) {}
+
+    private final Config config;
+    private final int maxBudget;
+    private int budget;
+
+    TokenBudgetBatcher(Config config) {
+        this.config = config;
+        this.budget = config.tokens();
+        this.maxBudget = config.tokens() * 16;
+    }
+
+    static int estimateTokens(LogEntry entry) {
+        // about four characters per token
+        var chars = (entry.body() == null ? 0 : entry.body().length())
+                + (entry.exception() == null ? 0 : entry.exception().length());
+        return Math.min(MAX_TOKENS, QUERY_TOKENS + chars / 4);
+    }
+
+    List<Batch> split(List<LogEntry> window) {
+        var tokens = window.stream().mapToInt(TokenBudgetBatcher::estimateTokens).toArray();
+        var order = IntStream.range(0, tokens.length).boxed()
+                .sorted(Comparator.comparingInt(i -> tokens[i])).mapToInt(Integer::intValue).toArray();
+        var budget = budget();
+        var batches = new ArrayList<Batch>();
+        int start = 0;
+        for (int i = 1; i <= order.length; i++) {
+            // in ascending order the next entry would be the longest of the batch
+            if (i == order.length || (long) (i - start + 1) * tokens[order[i]] > budget) {
+                batches.add(new Batch(Arrays.copyOfRange(order, start, i), (i - start) * tokens[order[i - 1]]));
+                start = i;
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * Adapt the budget to the time a batch took
+     */
+    synchronized void record(Batch batch, long nanos) {
+        // batches cut short by the end of a window don't tell how long a full one would take
+        if (batch.paddedTokens() < budget / 2) {
+            return;
+        }
+        var ratio = config.targetMillis() * 1e6 / Math.max(nanos, 1);
+        // damped, so that single slow batch doesn't halve the budget
+        var factor = Math.sqrt(Math.min(2, Math.max(0.5, ratio)));
+        budget = (int) Math.min(maxBudget, Math.max(MAX_TOKENS, budget * factor));
+    }
+
+    synchronized int budget() {
+        return budget;
+    }
+}
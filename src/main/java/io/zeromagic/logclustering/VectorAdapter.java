@@ -1,7 +1,11 @@
 package io.zeromagic.logclustering;
 
 import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.naivecluster.Cluster;
+import io.zeromagic.logclustering.naivecluster.LeaderIndex;
+import io.zeromagic.logclustering.naivecluster.LinearScanIndex;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -26,6 +30,33 @@ interface VectorAdapter<VEC> {
         return batch.stream().map(this::vectorize).toList();
     }
 
+    /**
+     * Vectorize a batch to compare with leaders that no longer change, like the ones loaded from a snapshot.
+     * Unlike {@link #vectorizeBatch(List)} it is meant for long-running processes, so it must not output the vectors
+     * nor grow shared state with every new input.
+     * @param batch
+     * @return
+     */
+    default List<VEC> vectorizeLookup(List<LogEntry> batch) {
+        return vectorizeBatch(batch);
+    }
+
+    /**
+     * Vector of another entry that is a duplicate of the one vec was made from, reusing its representation
+     * instead of vectorizing the entry again.
+     * @param vec vector of the first occurrence
+     * @param entry the duplicate entry
+     * @return vector with the same representation as vec, that extracts back to entry
+     */
+    VEC withEntry(VEC vec, LogEntry entry);
+
+    /**
+     * Called once clustering is finished
+     * @param clusters final clusters, in order of the cluster indexes of the report
+     */
+    default void clustered(List<Cluster<VEC>> clusters) throws IOException {
+    }
+
     /**
      * Compute the distance between two vectors by metric relevant for grouping.
      * @param vec1
@@ -46,4 +77,20 @@ interface VectorAdapter<VEC> {
      * @return clustering threshold
      */
     double threshold();
+
+    /**
+     * Index for looking up closest cluster leader. Default one computes distance to every leader.
+     * @return new, empty index
+     */
+    default LeaderIndex<VEC> leaderIndex() {
+        return new LinearScanIndex<>(this::distance);
+    }
+
+    /**
+     * Format of the vectors in cluster snapshots
+     * @return codec, or null when clusters of these vectors cannot be saved
+     */
+    default ClusterSnapshot.Codec<VEC> snapshotCodec() {
+        return null;
+    }
 }
@@ -0,0 +1,118 @@
+package io.zeromagic.logclustering.input;
+
+/**
+ * Byte level replacement of the header pattern of {@link HadoopInputProducer}. Matches exactly the lines
+ * {@code ^(\d{4}-\d{2}-\d{2} \d{2}:\d{2}:\d{2},\d{3})\s+(\w+)\s+\[(.*?)\]\s+(\S+):\s+(.*)$} does, and records
+ * the positions of its groups.
+ * <p>
+ * Lines are ranges of UTF-8 encoded bytes without the line terminator. Character classes of the pattern only
+ * consider ASCII, so they can be tested on bytes; bytes of multibyte characters count as non-whitespace.
+ */
+final class HadoopLineScanner {
+    static final int TIMESTAMP_LENGTH = 23;
+    private static final String TIMESTAMP_LAYOUT = "dddd-dd-dd dd:dd:dd,ddd";
+
+    int levelStart;
+    int levelEnd;
+    int loggerStart;
+    int loggerEnd;
+    int bodyStart;
+
+    /**
+     * @return true when {@code buffer[start..end)} is a header line
+     */
+    boolean matches(byte[] buffer, int start, int end) {
+        if (end - start < TIMESTAMP_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < TIMESTAMP_LENGTH; i++) {
+            var b = buffer[start + i];
+            var expected = TIMESTAMP_LAYOUT.charAt(i);
+            if (expected == 'd' ? b < '0' || b > '9' : b != expected) {
+                return false;
+            }
+        }
+        var i = skipSpace(buffer, start + TIMESTAMP_LENGTH, end);
+        if (i == start + TIMESTAMP_LENGTH) {
+            return false;
+        }
+        levelStart = i;
+        while (i < end && isWordChar(buffer[i])) {
+            i++;
+        }
+        levelEnd = i;
+        if (levelEnd == levelStart) {
+            return false;
+        }
+        i = skipSpace(buffer, i, end);
+        if (i == levelEnd || i == end || buffer[i] != '[') {
+            return false;
+        }
+        // thread name is reluctant, so try closing brackets from the first one on
+        for (i++; i < end; i++) {
+            if (buffer[i] == ']' && matchesTail(buffer, i + 1, end)) {
+                return true;
+            }
+            if (isLineSeparator(buffer, i, end)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Match {@code \s+(\S+):\s+(.*)$}
+     */
+    private boolean matchesTail(byte[] buffer, int start, int end) {
+        var i = skipSpace(buffer, start, end);
+        if (i == start) {
+            return false;
+        }
+        loggerStart = i;
+        while (i < end && !isSpace(buffer[i])) {
+            i++;
+        }
+        // the colon is the last character of the run, as it needs to be followed by whitespace
+        if (i == end || i - loggerStart < 2 || buffer[i - 1] != ':') {
+            return false;
+        }
+        loggerEnd = i - 1;
+        bodyStart = skipSpace(buffer, i, end);
+        for (int j = bodyStart; j < end; j++) {
+            if (isLineSeparator(buffer, j, end)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSpace(byte[] buffer, int i, int end) {
+        while (i < end && isSpace(buffer[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == 0x0B || b == '\f' || b == '\n' || b == '\r';
+    }
+
+    private static boolean isWordChar(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_';
+    }
+
+    /**
+     * Line separators other than CR and LF, that dot doesn't match: U+0085, U+2028 and U+2029
+     */
+    private static boolean isLineSeparator(byte[] buffer, int i, int end) {
+        var b = buffer[i];
+        if (b == (byte) 0xC2) {
+            return i + 1 < end && buffer[i + 1] == (byte) 0x85;
+        }
+        if (b == (byte) 0xE2) {
+            return i + 2 < end && buffer[i + 1] == (byte) 0x80
+                    && (buffer[i + 2] == (byte) 0xA8 || buffer[i + 2] == (byte) 0xA9);
+        }
+        return false;
+    }
+}
@@ -1,7 +1,6 @@
 package io.zeromagic.logclustering.input;
 
-import jakarta.json.Json;
-import jakarta.json.JsonObject;
+import jakarta.json.JsonException;
 import jakarta.json.spi.JsonProvider;
 import jakarta.json.stream.JsonParser;
 import jakarta.json.stream.JsonParserFactory;
@@ -12,19 +11,25 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
+/**
+ * Input of LogAnalytics query results exported as JSON array of objects.
+ * <p>
+ * Only the fields used for clustering are extracted from parser events, everything else is skipped without being
+ * materialized. Entries are built complete, with stack trace already stemmed.
+ */
 public record JsonArrayInputProducer(Path source, Function<String,String> stackTraceStemmer) implements InputProducer {
-    private static final JsonParserFactory PARSER_FACTORY = JsonProvider.provider().createParserFactory(Map.of());
-    private static final JsonObject EMPTY = Json.createObjectBuilder().build();
+    static final JsonParserFactory PARSER_FACTORY = JsonProvider.provider().createParserFactory(Map.of());
 
 
     @Override
     public <X extends Throwable> int produceTo(ThrowingConsumer<X> consumer) throws IOException,X {
         try (var reader = Files.newBufferedReader(source)) {
-            return process(reader, consumer);
+            return process(reader, stackTraceStemmer, consumer);
         } catch (JsonParsingException e) {
             throw new IOException("Failed to parse JSON file: " + source, e);
         } catch (Exception e) {
@@ -32,60 +37,103 @@ public record JsonArrayInputProducer(Path source, Function<String,String> stackT
         }
     }
 
-    private <X extends Throwable> int process(Reader input, ThrowingConsumer<X> consumer) throws X {
+    /**
+     * Parse all entries of a JSON array, e.g. of a request body
+     * @throws JsonException when the input is not valid JSON or an entry misses required fields
+     */
+    public static List<LogEntry> readAll(Reader input, Function<String, String> stackTraceStemmer) {
+        var entries = new ArrayList<LogEntry>();
+        process(input, stackTraceStemmer, entries::add);
+        return entries;
+    }
+
+    private static <X extends Throwable> int process(Reader input, Function<String, String> stackTraceStemmer,
+                                                     ThrowingConsumer<X> consumer) throws X {
         var parser = PARSER_FACTORY.createParser(input);
-        var index = new AtomicInteger(0);
+        int index = 0;
         while (parser.hasNext()) {
             var event = parser.next();
             if (event == JsonParser.Event.START_OBJECT) {
-                var object = parser.getObject();
-                var th = EMPTY;
-                var thString=object.getString("Throwable");
-                if (thString.startsWith("{")) {
-                    var p = PARSER_FACTORY
-                            .createParser(new StringReader(thString));
-                    var evt = p.next();
-                    if (evt == JsonParser.Event.START_OBJECT) {
-                        th = p.getObject();
-                    }
-                }
-                var throwable = th; // make this effectively final
-                var entryIndex = index.getAndIncrement();
-                consumer.accept(new LogEntry() {
-                    private String stemmedStackTrace = null;
+                consumer.accept(readEntry(parser, index++, stackTraceStemmer));
+            }
+        }
+        return index;
+    }
 
-                    @Override
-                    public String body() {
-                        // out specific query uses "None" as a placeholder for no message or no exception
-                        if ("None".equals(object.getString("LogMessage")) && throwable.containsKey("Exception")) {
-                            return throwable.getString("Exception");
-                        }
-                        return object.getString("LogMessage");
+    /**
+     * Read entry from the parser that just returned its START_OBJECT, up to its END_OBJECT
+     */
+    static LogEntry readEntry(JsonParser parser, int entryIndex, Function<String, String> stackTraceStemmer) {
+        String message = null, level = null, loggerName = null, name = null, timestamp = null, throwable = null;
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            var key = parser.getString();
+            var value = parser.next();
+            if (value != JsonParser.Event.VALUE_STRING) {
+                skip(parser, value);
+                continue;
+            }
+            switch (key) {
+                case "LogMessage" -> message = parser.getString();
+                case "Level" -> level = parser.getString();
+                case "LoggerName" -> loggerName = parser.getString();
+                case "Name" -> name = parser.getString();
+                case "Timestamp" -> timestamp = parser.getString();
+                case "Throwable" -> throwable = parser.getString();
+                default -> {
+                    // not needed
+                }
+            }
+        }
+        String exceptionName = null, stackTrace = null;
+        if (require(throwable, "Throwable", entryIndex).startsWith("{")) {
+            try (var p = PARSER_FACTORY.createParser(new StringReader(throwable))) {
+                p.next();
+                while (p.next() == JsonParser.Event.KEY_NAME) {
+                    var key = p.getString();
+                    var value = p.next();
+                    if (value != JsonParser.Event.VALUE_STRING) {
+                        skip(p, value);
+                    } else if (key.equals("Exception")) {
+                        exceptionName = p.getString();
+                    } else if (key.equals("StackTrace")) {
+                        stackTrace = p.getString();
                     }
+                }
+            }
+        }
+        require(message, "LogMessage", entryIndex);
+        // our specific query uses "None" as a placeholder for no message or no exception
+        var body = "None".equals(message) && exceptionName != null ? exceptionName : message;
+        return new ParsedEntry(body, stackTrace == null ? null : stackTraceStemmer.apply(stackTrace), Map.of(
+                LogEntry.MetadataKeys.LEVEL, require(level, "Level", entryIndex),
+                LogEntry.MetadataKeys.LOGGER_NAME, require(loggerName, "LoggerName", entryIndex),
+                LogEntry.MetadataKeys.POD, require(name, "Name", entryIndex),
+                LogEntry.MetadataKeys.TIMESTAMP, require(timestamp, "Timestamp", entryIndex),
+                "EntryIndex", String.valueOf(entryIndex)));
+    }
 
-                    @Override
-                    public String exception() {
-                        if (stemmedStackTrace != null) {
-                            return stemmedStackTrace;
-                        }
-                        if (throwable.containsKey("StackTrace")) {
-                            stemmedStackTrace = stackTraceStemmer.apply(throwable.getString("StackTrace"));
-                            return stemmedStackTrace;
-                        }
-                        return null;
-                    }
+    private static String require(String value, String field, int entryIndex) {
+        if (value == null) {
+            throw new JsonException("Entry %d has no string field %s".formatted(entryIndex, field));
+        }
+        return value;
+    }
 
-                    @Override
-                    public Map<String, String> metadata() {
-                        return Map.of("Level", object.getString("Level"),
-                                "LoggerName", object.getString("LoggerName"),
-                                "Pod", object.getString("Name"),
-                                "Timestamp", object.getString("Timestamp"),
-                                "EntryIndex", String.valueOf(entryIndex));
-                    }
-                });
+    /**
+     * Skip the value that started with given event, including nested structures
+     */
+    private static void skip(JsonParser parser, JsonParser.Event start) {
+        if (start != JsonParser.Event.START_OBJECT && start != JsonParser.Event.START_ARRAY) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            switch (parser.next()) {
+                case START_OBJECT, START_ARRAY -> depth++;
+                case END_OBJECT, END_ARRAY -> depth--;
+                default -> {
+                }
             }
         }
-        return index.get();
     }
 }
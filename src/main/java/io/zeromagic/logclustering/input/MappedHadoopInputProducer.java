@@ -0,0 +1,212 @@
+package io.zeromagic.logclustering.input;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parallel version of {@link HadoopInputProducer}, producing the same entries in the same order.
+ * <p>
+ * Every file is memory mapped and split into chunks of roughly equal size, each chunk starting with an entry header.
+ * Chunks are parsed in parallel with {@link HadoopLineScanner} instead of regular expression, and passed to the
+ * consumer in order of the files and of the chunks within them. Unlike the reader of {@link HadoopInputProducer},
+ * malformed UTF-8 is replaced rather than failing the input.
+ */
+public class MappedHadoopInputProducer implements InputProducer {
+    // small enough for parsed entries to die young while the consumer catches up
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    // how much is scanned at once when looking for a chunk boundary
+    private static final int WINDOW_SIZE = 1 << 20;
+
+    private final Path source;
+    private final int threads;
+    private final int chunkSize;
+
+    public MappedHadoopInputProducer(Path source, int threads) {
+        this(source, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    MappedHadoopInputProducer(Path source, int threads, int chunkSize) {
+        if (threads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid threads=%d, chunkSize=%d".formatted(threads, chunkSize));
+        }
+        this.source = source;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    private record Chunk(Path file, long start, long end) {}
+
+    @Override
+    public <X extends Throwable> int produceTo(ThrowingConsumer<X> consumer) throws IOException, X {
+        List<Path> files;
+        try (var paths = Files.walk(source)) {
+            files = paths.filter(Files::isRegularFile)
+                    .filter(path -> path.toString().endsWith(".log"))
+                    .toList();
+        }
+        try (var parser = new OrderedChunkParser<>(threads, consumer)) {
+            for (var file : files) {
+                for (var chunk : split(file)) {
+                    parser.submit(() -> parse(chunk));
+                }
+            }
+            return parser.finish();
+        }
+    }
+
+    /**
+     * Split file into chunks of at least chunkSize bytes, every chunk but first starting with a header line.
+     */
+    private List<Chunk> split(Path file) throws IOException {
+        var chunks = new ArrayList<Chunk>();
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var size = channel.size();
+            long start = 0;
+            while (start < size) {
+                var end = start + chunkSize >= size ? size : nextHeader(channel, start + chunkSize, size);
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IOException("No entry starts within 2GB after offset %d of %s".formatted(start, file));
+                }
+                chunks.add(new Chunk(file, start, end));
+                start = end;
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * @return offset of first header line starting after {@code from}, or size when there is none
+     */
+    private static long nextHeader(FileChannel channel, long from, long size) throws IOException {
+        var scanner = new HadoopLineScanner();
+        var pos = from;
+        while (pos < size) {
+            // window includes preceding byte to tell whether a line starts at pos
+            var windowStart = pos - 1;
+            var length = (int) Math.min(WINDOW_SIZE, size - windowStart);
+            var window = OrderedChunkParser.read(channel, windowStart, length);
+            var atEnd = windowStart + length == size;
+            var cut = -1;
+            for (int i = 1; i < length; i++) {
+                if (!isLineStart(window, i, length)) {
+                    continue;
+                }
+                var lineEnd = lineEnd(window, i, length);
+                if (lineEnd == length && !atEnd) {
+                    cut = i;
+                    break;
+                }
+                if (scanner.matches(window, i, lineEnd)) {
+                    return windowStart + i;
+                }
+                i = lineEnd;
+            }
+            if (atEnd) {
+                break;
+            }
+            // rescan line cut by the end of window, unless it is longer than the window
+            pos = cut > 1 ? windowStart + cut : windowStart + length;
+        }
+        return size;
+    }
+
+    /**
+     * Line starts after LF, or after CR not followed by LF, as in {@link java.io.BufferedReader#readLine()}
+     */
+    private static boolean isLineStart(byte[] buffer, int i, int limit) {
+        var previous = buffer[i - 1];
+        return previous == '\n' || (previous == '\r' && i < limit && buffer[i] != '\n');
+    }
+
+    private static int lineEnd(byte[] buffer, int i, int limit) {
+        while (i < limit) {
+            var b = buffer[i];
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static List<LogEntry> parse(Chunk chunk) throws IOException {
+        byte[] buffer;
+        try (var channel = FileChannel.open(chunk.file(), StandardOpenOption.READ)) {
+            buffer = OrderedChunkParser.read(channel, chunk.start(), (int) (chunk.end() - chunk.start()));
+        }
+        return new ChunkParser(chunk.file().getFileName().toString(), buffer).parse();
+    }
+
+    /**
+     * Same state machine as {@link HadoopInputProducer} over lines of single chunk
+     */
+    private static class ChunkParser {
+        private final String filename;
+        private final byte[] buffer;
+        private final HadoopLineScanner scanner = new HadoopLineScanner();
+        private final List<LogEntry> entries = new ArrayList<>();
+        private Map<String, String> metadata;
+        private String body;
+        private final StringBuilder exception = new StringBuilder();
+
+        ChunkParser(String filename, byte[] buffer) {
+            this.filename = filename;
+            this.buffer = buffer;
+        }
+
+        List<LogEntry> parse() {
+            var limit = buffer.length;
+            int pos = 0;
+            while (pos < limit) {
+                var end = lineEnd(buffer, pos, limit);
+                line(pos, end);
+                pos = end < limit - 1 && buffer[end] == '\r' && buffer[end + 1] == '\n' ? end + 2 : end + 1;
+            }
+            if (body != null) {
+                emit();
+            }
+            return entries;
+        }
+
+        private void line(int start, int end) {
+            if (scanner.matches(buffer, start, end)) {
+                if (body != null) {
+                    emit();
+                }
+                metadata = Map.of(
+                        LogEntry.MetadataKeys.TIMESTAMP, string(start, start + HadoopLineScanner.TIMESTAMP_LENGTH),
+                        LogEntry.MetadataKeys.LEVEL, string(scanner.levelStart, scanner.levelEnd),
+                        LogEntry.MetadataKeys.LOGGER_NAME, string(scanner.loggerStart, scanner.loggerEnd),
+                        LogEntry.MetadataKeys.POD, filename);
+                body = string(scanner.bodyStart, end);
+            } else if (body != null) {
+                var line = string(start, end);
+                if (line.isBlank()) {
+                    emit();
+                } else {
+                    if (!exception.isEmpty()) {
+                        exception.append('\n');
+                    }
+                    exception.append(line);
+                }
+            }
+        }
+
+        private void emit() {
+            entries.add(new ParsedEntry(body, exception.isEmpty() ? null : exception.toString(), metadata));
+            exception.setLength(0);
+            body = null;
+        }
+
+        private String string(int start, int end) {
+            return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        }
+    }
+}
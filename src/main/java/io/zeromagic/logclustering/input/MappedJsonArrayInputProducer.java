@@ -0,0 +1,158 @@
+package io.zeromagic.logclustering.input;
+
+import jakarta.json.JsonException;
+import jakarta.json.stream.JsonParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Parallel version of {@link JsonArrayInputProducer}, producing the same entries with the same entry indexes.
+ * <p>
+ * The file is memory mapped window by window, so it may exceed 2GB, and scanned for boundaries of the entry objects
+ * while tracking strings and nesting. Runs of consecutive objects are then decoded in parallel as small JSON arrays.
+ * Only the entries themselves are validated, anything between them that is not an entry is skipped. Stack trace
+ * stemmer is called from multiple threads.
+ */
+public class MappedJsonArrayInputProducer implements InputProducer {
+    // small enough for parsed entries to die young while the consumer catches up
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    private static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    private final Path source;
+    private final Function<String, String> stackTraceStemmer;
+    private final int threads;
+    private final int chunkSize;
+    private final int windowSize;
+
+    public MappedJsonArrayInputProducer(Path source, Function<String, String> stackTraceStemmer, int threads) {
+        this(source, stackTraceStemmer, threads, DEFAULT_CHUNK_SIZE, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedJsonArrayInputProducer(Path source, Function<String, String> stackTraceStemmer, int threads, int chunkSize,
+                                 int windowSize) {
+        if (threads < 1 || chunkSize < 1 || windowSize < 1) {
+            throw new IllegalArgumentException("Invalid threads=%d, chunkSize=%d, windowSize=%d"
+                    .formatted(threads, chunkSize, windowSize));
+        }
+        this.source = source;
+        this.stackTraceStemmer = stackTraceStemmer;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Range of the file holding {@code count} entry objects separated by commas
+     */
+    private record Chunk(long start, long end, int firstIndex, int count) {}
+
+    @Override
+    public <X extends Throwable> int produceTo(ThrowingConsumer<X> consumer) throws IOException, X {
+        try (var channel = FileChannel.open(source, StandardOpenOption.READ);
+             var parser = new OrderedChunkParser<>(threads, consumer)) {
+            var size = channel.size();
+            var window = new byte[(int) Math.min(windowSize, size)];
+            boolean inString = false, escape = false, separated = true;
+            int depth = 0;
+            int index = 0;
+            // chunk being collected
+            long chunkStart = -1, chunkEnd = -1;
+            int chunkIndex = 0;
+            for (long pos = 0; pos < size; pos += window.length) {
+                var length = (int) Math.min(window.length, size - pos);
+                OrderedChunkParser.read(channel, pos, window, 0, length);
+                for (int i = 0; i < length; i++) {
+                    var b = window[i];
+                    if (inString) {
+                        if (escape) {
+                            escape = false;
+                        } else if (b == '\\') {
+                            escape = true;
+                        } else if (b == '"') {
+                            inString = false;
+                        }
+                    } else if (depth > 0) {
+                        if (b == '"') {
+                            inString = true;
+                        } else if (b == '{' || b == '[') {
+                            depth++;
+                        } else if ((b == '}' || b == ']') && --depth == 0) {
+                            chunkEnd = pos + i + 1;
+                            if (chunkEnd - chunkStart >= chunkSize) {
+                                submit(parser, channel, new Chunk(chunkStart, chunkEnd, chunkIndex, index - chunkIndex));
+                                chunkStart = -1;
+                            }
+                        }
+                    } else if (b == '{') {
+                        // entries can share a chunk only when separated by just a comma
+                        if (chunkStart >= 0 && !separated) {
+                            submit(parser, channel, new Chunk(chunkStart, chunkEnd, chunkIndex, index - chunkIndex));
+                            chunkStart = -1;
+                        }
+                        if (chunkStart < 0) {
+                            chunkStart = pos + i;
+                            chunkIndex = index;
+                        }
+                        index++;
+                        depth = 1;
+                        separated = true;
+                    } else if (b == '"') {
+                        inString = true;
+                        separated = false;
+                    } else if (b != ',' && b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                        separated = false;
+                    }
+                }
+            }
+            if (depth > 0) {
+                throw new IOException("Unexpected end of JSON file: " + source);
+            }
+            if (chunkStart >= 0) {
+                submit(parser, channel, new Chunk(chunkStart, chunkEnd, chunkIndex, index - chunkIndex));
+            }
+            return parser.finish();
+        }
+    }
+
+    private <X extends Throwable> void submit(OrderedChunkParser<X> parser, FileChannel channel, Chunk chunk)
+            throws IOException, X {
+        var length = chunk.end() - chunk.start();
+        if (length > Integer.MAX_VALUE - 2) {
+            throw new IOException("Entries at offset %d of %s exceed 2GB".formatted(chunk.start(), source));
+        }
+        parser.submit(() -> parse(channel, chunk));
+    }
+
+    private List<LogEntry> parse(FileChannel channel, Chunk chunk) throws IOException {
+        var length = (int) (chunk.end() - chunk.start());
+        // enclose the objects into an array
+        var json = new byte[length + 2];
+        json[0] = '[';
+        OrderedChunkParser.read(channel, chunk.start(), json, 1, length);
+        json[length + 1] = ']';
+        var entries = new ArrayList<LogEntry>(chunk.count());
+        try (var parser = JsonArrayInputProducer.PARSER_FACTORY.createParser(new ByteArrayInputStream(json),
+                StandardCharsets.UTF_8)) {
+            parser.next();
+            var index = chunk.firstIndex();
+            while (parser.next() == JsonParser.Event.START_OBJECT) {
+                entries.add(JsonArrayInputProducer.readEntry(parser, index++, stackTraceStemmer));
+            }
+        } catch (JsonException e) {
+            throw new IOException("Failed to parse JSON file %s at offset %d".formatted(source, chunk.start()), e);
+        }
+        if (entries.size() != chunk.count()) {
+            throw new IOException("Expected %d entries at offset %d of %s, parsed %d"
+                    .formatted(chunk.count(), chunk.start(), source, entries.size()));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,88 @@
+package io.zeromagic.logclustering.input;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses chunks of input on a pool of threads, and passes their entries to the consumer in order of submission.
+ * Only a few chunks are parsed ahead of the consumer, to keep memory in check.
+ */
+final class OrderedChunkParser<X extends Throwable> implements AutoCloseable {
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final InputProducer.ThrowingConsumer<X> consumer;
+    private final ArrayDeque<Future<List<LogEntry>>> inFlight = new ArrayDeque<>();
+    private int count;
+
+    OrderedChunkParser(int threads, InputProducer.ThrowingConsumer<X> consumer) {
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.maxInFlight = 2 * threads;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Submit parsing of next chunk, first passing on the oldest parsed chunk when too many are pending
+     */
+    void submit(Callable<List<LogEntry>> chunk) throws IOException, X {
+        if (inFlight.size() == maxInFlight) {
+            consume(inFlight.poll());
+        }
+        inFlight.add(executor.submit(chunk));
+    }
+
+    /**
+     * Pass on all remaining chunks
+     * @return number of entries passed to consumer
+     */
+    int finish() throws IOException, X {
+        while (!inFlight.isEmpty()) {
+            consume(inFlight.poll());
+        }
+        return count;
+    }
+
+    private void consume(Future<List<LogEntry>> parsed) throws IOException, X {
+        List<LogEntry> entries;
+        try {
+            entries = parsed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Failed to parse", e.getCause());
+        }
+        for (var entry : entries) {
+            consumer.accept(entry);
+        }
+        count += entries.size();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Map the range and copy it out in bulk, as scanning an array is much faster than reading mapped buffer
+     * byte by byte
+     */
+    static byte[] read(FileChannel channel, long start, int length) throws IOException {
+        var result = new byte[length];
+        read(channel, start, result, 0, length);
+        return result;
+    }
+
+    static void read(FileChannel channel, long start, byte[] target, int offset, int length) throws IOException {
+        channel.map(FileChannel.MapMode.READ_ONLY, start, length).get(0, target, offset, length);
+    }
+}
@@ -0,0 +1,8 @@
+package io.zeromagic.logclustering.input;
+
+import java.util.Map;
+
+/**
+ * Log entry with all fields resolved at parse time.
+ */
+record ParsedEntry(String body, String exception, Map<String, String> metadata) implements LogEntry {}
@@ -0,0 +1,159 @@
+package io.zeromagic.logclustering.input;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Removes stack frames outside of given packages from a stack trace, so that traces only differing in framework
+ * frames look the same.
+ * <p>
+ * Does the same as {@code s.replaceAll("\n\\s+at (?!prefix1|prefix2).+", "")} with the prefixes matched literally,
+ * but in single pass without backtracking: a frame line is removed with the line break before it, together with
+ * any blank lines preceding it. Packages are looked up in a prefix trie. Results are cached in a direct mapped table
+ * keyed by hash of the trace, as the same traces tend to repeat many times. Thread-safe.
+ */
+public final class StackTraceStemmer implements Function<String, String> {
+    public static final List<String> DEFAULT_PACKAGES = List.of("fish.payara.cloud");
+    private static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private record Cached(String trace, String stemmed) {}
+
+    private final Node trie = new Node();
+    private final Cached[] cache;
+
+    public StackTraceStemmer(Collection<String> keptPackages) {
+        this(keptPackages, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize number of cached traces, rounded up to power of two. 0 disables caching
+     */
+    StackTraceStemmer(Collection<String> keptPackages, int cacheSize) {
+        for (var prefix : keptPackages) {
+            trie.add(prefix);
+        }
+        this.cache = new Cached[cacheSize == 0 ? 0 : Integer.highestOneBit(Math.max(1, cacheSize - 1)) << 1];
+    }
+
+    /**
+     * Parse comma separated list of packages
+     */
+    public static StackTraceStemmer parse(String packages) {
+        return new StackTraceStemmer(Arrays.stream(packages.split(",")).map(String::trim)
+                .filter(p -> !p.isEmpty()).toList());
+    }
+
+    @Override
+    public String apply(String stackTrace) {
+        if (cache.length == 0) {
+            return stem(stackTrace);
+        }
+        var hash = stackTrace.hashCode();
+        var slot = (hash ^ (hash >>> 16)) & (cache.length - 1);
+        var cached = cache[slot];
+        if (cached != null && cached.trace().equals(stackTrace)) {
+            return cached.stemmed();
+        }
+        var stemmed = stem(stackTrace);
+        // racy, but entries are immutable so a reader sees either old or new one
+        cache[slot] = new Cached(stackTrace, stemmed);
+        return stemmed;
+    }
+
+    String stem(String s) {
+        var length = s.length();
+        StringBuilder result = null;
+        int copied = 0;
+        int i = 0;
+        int newline;
+        while ((newline = s.indexOf('\n', i)) >= 0) {
+            var frame = newline + 1;
+            while (frame < length && isSpace(s.charAt(frame))) {
+                frame++;
+            }
+            if (frame > newline + 1 && s.startsWith("at ", frame) && !trie.matches(s, frame + 3)) {
+                var end = frame + 3;
+                while (end < length && !isLineTerminator(s.charAt(end))) {
+                    end++;
+                }
+                if (end > frame + 3) {
+                    if (result == null) {
+                        result = new StringBuilder(length);
+                    }
+                    result.append(s, copied, newline);
+                    copied = end;
+                    i = end;
+                    continue;
+                }
+            }
+            // line breaks within the whitespace would fail the same way
+            i = Math.max(newline + 1, frame);
+        }
+        if (result == null) {
+            return s;
+        }
+        return result.append(s, copied, length).toString();
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static final class Node {
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal;
+
+        void add(String prefix) {
+            var node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.childOrCreate(prefix.charAt(i));
+            }
+            node.terminal = true;
+        }
+
+        private Node childOrCreate(char c) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == c) {
+                    return children[i];
+                }
+            }
+            labels = Arrays.copyOf(labels, labels.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            labels[labels.length - 1] = c;
+            return children[children.length - 1] = new Node();
+        }
+
+        /**
+         * @return true when any of the prefixes starts at {@code start}
+         */
+        boolean matches(String s, int start) {
+            var node = this;
+            for (int i = start; !node.terminal; i++) {
+                if (i == s.length()) {
+                    return false;
+                }
+                node = node.child(s.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Node child(char c) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -6,4 +6,51 @@ public interface Tokenizer {
     Iterable<String> tokenize(String text);
 
     Tokenizer SIMPLE = text -> List.of(text.split("\\W+"));
+
+    /**
+     * Receives tokens as ranges of the scanned text
+     */
+    interface TokenSink {
+        void token(CharSequence text, int start, int end);
+    }
+
+    /**
+     * Report the same tokens as {@link #SIMPLE} does, but without regular expression and without allocating.
+     * That includes quirks of {@link String#split(String)}: empty text is single empty token, and text starting with
+     * a delimiter begins with an empty token, unless there are no other tokens.
+     */
+    static void scan(CharSequence text, TokenSink sink) {
+        var length = text.length();
+        if (length == 0) {
+            sink.token(text, 0, 0);
+            return;
+        }
+        var leadingDelimiter = !isWordChar(text.charAt(0));
+        var first = true;
+        int i = 0;
+        while (true) {
+            while (i < length && !isWordChar(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                return;
+            }
+            var start = i;
+            while (i < length && isWordChar(text.charAt(i))) {
+                i++;
+            }
+            if (first && leadingDelimiter) {
+                sink.token(text, 0, 0);
+            }
+            first = false;
+            sink.token(text, start, i);
+        }
+    }
+
+    /**
+     * Same as {@code \w} of {@link java.util.regex.Pattern}
+     */
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
 }
@@ -2,16 +2,54 @@ package io.zeromagic.logclustering.naivecluster;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.DoubleStream;
 
-public record Cluster<VEC>(VEC leader, List<VEC> members) {
+public record Cluster<VEC>(VEC leader, List<VEC> members, Statistics statistics) {
     public static <T> Cluster<T> of(T leader) {
-        return new Cluster<>(leader, new CopyOnWriteArrayList<>(List.of(leader)));
+        var statistics = new Statistics();
+        statistics.add(0);
+        return new Cluster<>(leader, new MemberList<>(leader), statistics);
+    }
+
+    /**
+     * Cluster keeping only a random sample of its members, count of all of them is in the statistics.
+     */
+    public static <T> Cluster<T> sampled(T leader, int samples) {
+        var statistics = new Statistics();
+        statistics.add(0);
+        return new Cluster<>(leader, new ReservoirList<>(leader, samples), statistics);
+    }
+
+    /**
+     * Cluster without members, led by a leader of an earlier run.
+     * @param samples number of members to sample as in {@link #sampled(Object, int)}, 0 keeps all of them
+     */
+    public static <T> Cluster<T> empty(T leader, int samples) {
+        return new Cluster<>(leader, samples > 0 ? new ReservoirList<>(samples) : new MemberList<>(), new Statistics());
+    }
+
+    /**
+     * Add member found at given distance from the leader.
+     */
+    public void add(VEC member, double distance) {
+        members.add(member);
+        statistics.add(distance);
+    }
+
+    /**
+     * Take over all members of other cluster.
+     */
+    void merge(Cluster<VEC> other) {
+        members.addAll(other.members);
+        statistics.merge(other.statistics);
     }
 
     public record Stats(double average, double max, double stdDev) {}
 
+    /**
+     * Exact statistics of distances of all members from the leader, computed from scratch.
+     * @see Statistics#stats() for the running ones
+     */
     public Stats distributionStats(Metric<VEC> metric) {
         var distances = members.stream().mapToDouble(m -> metric.distance(leader, m)).toArray();
         var average = DoubleStream.of(distances).average().orElse(0);
@@ -19,4 +57,97 @@ public record Cluster<VEC>(VEC leader, List<VEC> members) {
         var stdDev = Math.sqrt(DoubleStream.of(distances).map(d -> Math.pow(d - average, 2)).sum() / distances.length);
         return new Stats(average, max, stdDev);
     }
+
+    /**
+     * Running statistics of a cluster, updated as members are added: distance from the leader with Welford's
+     * algorithm, and range of timestamps compared as strings. Thread-safe.
+     */
+    public static final class Statistics {
+        private long count;
+        private double mean;
+        private double m2;
+        private double max;
+        private String firstTimestamp;
+        private String lastTimestamp;
+
+        public synchronized void add(double distance) {
+            count++;
+            var delta = distance - mean;
+            mean += delta / count;
+            m2 += delta * (distance - mean);
+            max = Math.max(max, distance);
+        }
+
+        public synchronized void timestamp(String timestamp) {
+            if (timestamp == null) {
+                return;
+            }
+            if (firstTimestamp == null || timestamp.compareTo(firstTimestamp) < 0) {
+                firstTimestamp = timestamp;
+            }
+            if (lastTimestamp == null || timestamp.compareTo(lastTimestamp) > 0) {
+                lastTimestamp = timestamp;
+            }
+        }
+
+        /**
+         * Statistics saved from an earlier run
+         */
+        public static Statistics restore(long count, Stats stats, String firstTimestamp, String lastTimestamp) {
+            var statistics = new Statistics();
+            statistics.count = count;
+            statistics.mean = stats.average();
+            statistics.m2 = stats.stdDev() * stats.stdDev() * count;
+            statistics.max = stats.max();
+            statistics.firstTimestamp = firstTimestamp;
+            statistics.lastTimestamp = lastTimestamp;
+            return statistics;
+        }
+
+        /**
+         * Combine with statistics of other cluster, as in parallel variant of Welford's algorithm.
+         */
+        public void merge(Statistics other) {
+            long otherCount;
+            double otherMean, otherM2, otherMax;
+            String otherFirst, otherLast;
+            synchronized (other) {
+                otherCount = other.count;
+                otherMean = other.mean;
+                otherM2 = other.m2;
+                otherMax = other.max;
+                otherFirst = other.firstTimestamp;
+                otherLast = other.lastTimestamp;
+            }
+            synchronized (this) {
+                if (otherCount == 0) {
+                    return;
+                }
+                var total = count + otherCount;
+                var delta = otherMean - mean;
+                m2 += otherM2 + delta * delta * count * otherCount / total;
+                mean += delta * otherCount / total;
+                count = total;
+                max = Math.max(max, otherMax);
+            }
+            timestamp(otherFirst);
+            timestamp(otherLast);
+        }
+
+        public synchronized long count() {
+            return count;
+        }
+
+        public synchronized Stats stats() {
+            return new Stats(mean, max, count == 0 ? 0 : Math.sqrt(m2 / count));
+        }
+
+        public synchronized String firstTimestamp() {
+            return firstTimestamp;
+        }
+
+        public synchronized String lastTimestamp() {
+            return lastTimestamp;
+        }
+    }
 }
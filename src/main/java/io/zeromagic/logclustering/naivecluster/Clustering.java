@@ -0,0 +1,25 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import java.util.List;
+
+/**
+ * Incremental clustering of stream of vectors.
+ *
+ * @param <T> vector type
+ */
+public interface Clustering<T> {
+    /**
+     * Add member to the closest cluster, or make it leader of a new one.
+     * @param member
+     * @return cluster the member was added to, or null when it is not known until {@link #getClusters()}
+     */
+    Cluster<T> add(T member);
+
+    /**
+     * Add existing cluster as is, without matching it against present clusters, e.g. one from an earlier run.
+     * Called before any member is added.
+     */
+    void seed(Cluster<T> cluster);
+
+    List<Cluster<T>> getClusters();
+}
@@ -0,0 +1,120 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import io.zeromagic.logclustering.vector.EmbeddingKernel;
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * Brute force index of embedding leaders.
+ * <p>
+ * Leaders are stored normalized to unit length as rows of a single row-major matrix, row index being the index of
+ * the cluster. Cosine distance to all leaders is then one sweep of dot products over contiguous block of memory.
+ * Due to normalization happening up front, the distances may differ from {@link EmbeddingVector#cosineDistance}
+ * in the last bits.
+ * <p>
+ * Only leaders live in the matrix. Members stay {@link EmbeddingVector} objects in their {@link Cluster}, as clusters
+ * are shared with term vectors, and the report, cluster mappings and binary output identify members by object.
+ * Memory of members is bounded by sampling them instead ({@link Cluster#sampled}).
+ * <p>
+ * Adding leaders is not thread-safe, lookups are.
+ */
+public class EmbeddingScanIndex implements LeaderIndex<EmbeddingVector> {
+    // below this many leaders the scan is not worth splitting across threads
+    private static final int BLOCK_SIZE = 2048;
+
+    private final EmbeddingKernel kernel;
+    private final List<Cluster<EmbeddingVector>> clusters = new ArrayList<>();
+    private int dimension = -1;
+    private float[] matrix = new float[0];
+    private final ScratchPool<Dots> dotsPool = new ScratchPool<>(Dots::new);
+
+    public EmbeddingScanIndex() {
+        this(EmbeddingKernel.INSTANCE);
+    }
+
+    public EmbeddingScanIndex(EmbeddingKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    @Override
+    public void add(Cluster<EmbeddingVector> cluster) {
+        var leader = cluster.leader();
+        var vector = leader.vector();
+        if (dimension < 0) {
+            dimension = vector.length;
+            matrix = new float[64 * dimension];
+        } else if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected vector of dimension %d, got %d".formatted(dimension, vector.length));
+        }
+        var row = clusters.size();
+        if ((row + 1) * dimension > matrix.length) {
+            matrix = Arrays.copyOf(matrix, matrix.length * 2);
+        }
+        var magnitude = leader.magnitude();
+        var offset = row * dimension;
+        for (int i = 0; i < dimension; i++) {
+            matrix[offset + i] = vector[i] / magnitude;
+        }
+        clusters.add(cluster);
+    }
+
+    @Override
+    public Optional<Match<EmbeddingVector>> findMatch(EmbeddingVector member, double threshold) {
+        var rows = clusters.size();
+        var dots = dotsPool.take();
+        try {
+            return findMatch(member, threshold, rows, dots.ensure(rows));
+        } finally {
+            dotsPool.release(dots);
+        }
+    }
+
+    private Optional<Match<EmbeddingVector>> findMatch(EmbeddingVector member, double threshold, int rows,
+                                                       float[] dots) {
+        var query = member.vector();
+        if (rows <= BLOCK_SIZE) {
+            kernel.dot(query, matrix, 0, rows, dots);
+        } else {
+            IntStream.range(0, (rows + BLOCK_SIZE - 1) / BLOCK_SIZE).parallel()
+                    .forEach(b -> kernel.dot(query, matrix, b * BLOCK_SIZE, Math.min(rows, (b + 1) * BLOCK_SIZE), dots));
+        }
+        var magnitude = member.magnitude();
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < rows; i++) {
+            double distance = 1 - dots[i] / magnitude;
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        if (best >= 0 && bestDistance < threshold) {
+            return Optional.of(new Match<>(clusters.get(best), bestDistance));
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public void clear() {
+        clusters.clear();
+    }
+
+    /**
+     * Dot products of a lookup with all leaders
+     */
+    private static final class Dots {
+        private float[] values = new float[64];
+
+        float[] ensure(int rows) {
+            if (values.length < rows) {
+                values = new float[Math.max(rows, values.length * 2)];
+            }
+            return values;
+        }
+    }
+}
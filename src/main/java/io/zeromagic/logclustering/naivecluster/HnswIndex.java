@@ -0,0 +1,269 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Approximate index of leaders based on Hierarchical Navigable Small World graph
+ * (Malkov, Yashunin: <a href="https://arxiv.org/abs/1603.09320">arXiv:1603.09320</a>).
+ * <p>
+ * The closest leader may not be reached in the graph, in which case a worse match is returned or the member starts
+ * a new cluster. Recall is traded for speed via {@link Config}: larger {@code m} and {@code efConstruction} build
+ * a better connected graph, larger {@code efSearch} explores more of it on every lookup.
+ * <p>
+ * Adding leaders is not thread-safe, lookups are.
+ */
+public class HnswIndex<T> implements LeaderIndex<T> {
+    /**
+     * @param m              number of neighbours a leader keeps per layer (twice as much on the bottom layer)
+     * @param efConstruction size of the candidate list when inserting a leader
+     * @param efSearch       size of the candidate list when looking up a match
+     */
+    public record Config(int m, int efConstruction, int efSearch) {
+        public static final Config DEFAULT = new Config(16, 100, 64);
+
+        public Config {
+            if (m < 2 || efConstruction < 1 || efSearch < 1) {
+                throw new IllegalArgumentException("Invalid HNSW parameters m=%d, efConstruction=%d, efSearch=%d"
+                        .formatted(m, efConstruction, efSearch));
+            }
+        }
+
+        /**
+         * Parse configuration in form {@code m,efConstruction,efSearch}
+         */
+        public static Config parse(String spec) {
+            var parts = spec.split(",");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Expected m,efConstruction,efSearch but got " + spec);
+            }
+            return new Config(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+                    Integer.parseInt(parts[2].trim()));
+        }
+    }
+
+    private record Candidate(int node, double distance) {}
+
+    private static final Comparator<Candidate> CLOSEST_FIRST = Comparator.comparingDouble(Candidate::distance)
+            .thenComparingInt(Candidate::node);
+
+    private final Metric<T> metric;
+    private final Config config;
+    private final double levelMultiplier;
+    private final Random random = new Random(0x5eed);
+    private final List<Node<T>> nodes = new ArrayList<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private final ScratchPool<Visits> visitsPool = new ScratchPool<>(Visits::new);
+
+    public HnswIndex(Metric<T> metric, Config config) {
+        this.metric = metric;
+        this.config = config;
+        this.levelMultiplier = 1 / Math.log(config.m());
+    }
+
+    @Override
+    public void add(Cluster<T> cluster) {
+        var level = (int) Math.floor(-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        var id = nodes.size();
+        nodes.add(new Node<>(cluster, level, config.m()));
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            return;
+        }
+        var visits = visitsPool.take().ensure(nodes.size());
+        try {
+            insert(id, level, cluster.leader(), visits);
+        } finally {
+            visitsPool.release(visits);
+        }
+    }
+
+    private void insert(int id, int level, T leader, Visits visits) {
+        var entry = List.of(new Candidate(entryPoint, distance(entryPoint, leader)));
+        for (int l = maxLevel; l > level; l--) {
+            entry = searchLayer(leader, entry, 1, l, visits);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            var found = searchLayer(leader, entry, config.efConstruction(), l, visits);
+            for (var neighbour : selectNeighbours(found, config.m())) {
+                connect(id, neighbour, l);
+                connect(neighbour.node(), new Candidate(id, neighbour.distance()), l);
+            }
+            entry = found;
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = id;
+        }
+    }
+
+    @Override
+    public Optional<Match<T>> findMatch(T member, double threshold) {
+        if (entryPoint < 0) {
+            return Optional.empty();
+        }
+        var visits = visitsPool.take().ensure(nodes.size());
+        Candidate best;
+        try {
+            var entry = List.of(new Candidate(entryPoint, distance(entryPoint, member)));
+            for (int l = maxLevel; l > 0; l--) {
+                entry = searchLayer(member, entry, 1, l, visits);
+            }
+            best = searchLayer(member, entry, config.efSearch(), 0, visits).getFirst();
+        } finally {
+            visitsPool.release(visits);
+        }
+        if (best.distance() < threshold) {
+            return Optional.of(new Match<>(nodes.get(best.node()).cluster, best.distance()));
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public void clear() {
+        nodes.clear();
+        entryPoint = -1;
+        maxLevel = -1;
+    }
+
+    private double distance(int node, T vector) {
+        return metric.distance(nodes.get(node).cluster.leader(), vector);
+    }
+
+    /**
+     * Best-first search of a single layer.
+     * @return up to ef closest nodes found, closest first
+     */
+    private List<Candidate> searchLayer(T query, List<Candidate> entry, int ef, int level, Visits visits) {
+        var visited = visits.marks;
+        var visitEpoch = ++visits.epoch;
+        var candidates = new PriorityQueue<>(CLOSEST_FIRST);
+        var results = new PriorityQueue<>(CLOSEST_FIRST.reversed());
+        for (var e : entry) {
+            visited[e.node()] = visitEpoch;
+            candidates.add(e);
+            results.add(e);
+            if (results.size() > ef) {
+                results.poll();
+            }
+        }
+        while (!candidates.isEmpty()) {
+            var current = candidates.poll();
+            if (CLOSEST_FIRST.compare(current, results.peek()) > 0) {
+                break;
+            }
+            var node = nodes.get(current.node());
+            var neighbours = node.neighbours[level];
+            for (int i = 0; i < node.counts[level]; i++) {
+                var n = neighbours[i];
+                if (visited[n] == visitEpoch) {
+                    continue;
+                }
+                visited[n] = visitEpoch;
+                var candidate = new Candidate(n, distance(n, query));
+                if (results.size() < ef || CLOSEST_FIRST.compare(candidate, results.peek()) < 0) {
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        var result = new ArrayList<>(results);
+        result.sort(CLOSEST_FIRST);
+        return result;
+    }
+
+    /**
+     * Neighbour selection heuristic of the paper: a candidate is skipped when it is closer to an already selected
+     * neighbour than to the base, so that the links spread in different directions. Remaining slots are filled with
+     * the skipped candidates.
+     * @param candidates candidates with distance to the base node, closest first
+     */
+    private List<Candidate> selectNeighbours(List<Candidate> candidates, int max) {
+        if (candidates.size() <= max) {
+            return candidates;
+        }
+        var selected = new ArrayList<Candidate>(max);
+        var skipped = new ArrayList<Candidate>();
+        for (var c : candidates) {
+            if (selected.size() == max) {
+                break;
+            }
+            var leader = nodes.get(c.node()).cluster.leader();
+            var diverse = true;
+            for (var s : selected) {
+                if (distance(s.node(), leader) < c.distance()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            (diverse ? selected : skipped).add(c);
+        }
+        for (int i = 0; selected.size() < max && i < skipped.size(); i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected;
+    }
+
+    private void connect(int from, Candidate to, int level) {
+        var node = nodes.get(from);
+        var max = level == 0 ? 2 * config.m() : config.m();
+        if (node.counts[level] < max) {
+            node.neighbours[level][node.counts[level]++] = to.node();
+            return;
+        }
+        // full, pick the best ones out of existing links and the new one
+        var leader = node.cluster.leader();
+        var candidates = new ArrayList<Candidate>(max + 1);
+        candidates.add(to);
+        for (int i = 0; i < node.counts[level]; i++) {
+            var n = node.neighbours[level][i];
+            candidates.add(new Candidate(n, distance(n, leader)));
+        }
+        candidates.sort(CLOSEST_FIRST);
+        var selected = selectNeighbours(candidates, max);
+        for (int i = 0; i < selected.size(); i++) {
+            node.neighbours[level][i] = selected.get(i).node();
+        }
+        node.counts[level] = selected.size();
+    }
+
+    /**
+     * Nodes visited by a search, a node was visited in the current one when its mark equals the epoch
+     */
+    private static final class Visits {
+        private int[] marks = new int[64];
+        private int epoch;
+
+        Visits ensure(int nodes) {
+            if (marks.length < nodes) {
+                marks = Arrays.copyOf(marks, Math.max(nodes, marks.length * 2));
+            }
+            return this;
+        }
+    }
+
+    private static final class Node<T> {
+        private final Cluster<T> cluster;
+        private final int[][] neighbours;
+        private final int[] counts;
+
+        Node(Cluster<T> cluster, int level, int m) {
+            this.cluster = cluster;
+            this.neighbours = new int[level + 1][];
+            this.counts = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                neighbours[l] = new int[l == 0 ? 2 * m : m];
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import io.zeromagic.logclustering.vector.OptimizedTermVector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Index of term vector leaders by the terms they contain.
+ * <p>
+ * Only leaders sharing at least one term with the member are scored. Terms of the member are visited from the rarest
+ * one, and once the terms not visited yet cannot bring a new leader under the threshold, no more leaders are
+ * admitted as candidates (prefix filtering). Candidates whose upper bound still cannot beat the threshold are
+ * dropped, the rest is scored with {@link OptimizedTermVector#cosineDistance}, therefore the matches are exactly
+ * the same as of {@link LinearScanIndex}. When common terms make most leaders candidates, postings of the remaining
+ * terms are visited as well, and the candidates are scored by the dot products summed from postings instead.
+ * <p>
+ * Adding leaders is not thread-safe, lookups are.
+ */
+public class InvertedTermIndex implements LeaderIndex<OptimizedTermVector> {
+    // relative slack of the pruning bounds, so that rounding never drops a leader brute force would match
+    private static final double SLACK = 1e-9;
+    // visiting a posting costs about this many times less than a merge join of a candidate with the member
+    private static final int POSTINGS_PER_JOIN = 16;
+
+    private final List<Cluster<OptimizedTermVector>> leaders = new ArrayList<>();
+    // indexed by term id
+    private Postings[] postings = new Postings[1024];
+    private final ScratchPool<Scratch> scratchPool = new ScratchPool<>(Scratch::new);
+
+    @Override
+    public void add(Cluster<OptimizedTermVector> cluster) {
+        var id = leaders.size();
+        leaders.add(cluster);
+        var leader = cluster.leader();
+        var terms = leader.ids();
+        var freqs = leader.freqs();
+        if (terms.length > 0 && terms[terms.length - 1] >= postings.length) {
+            postings = Arrays.copyOf(postings, Math.max(postings.length * 2, terms[terms.length - 1] + 1));
+        }
+        for (int i = 0; i < terms.length; i++) {
+            if (postings[terms[i]] == null) {
+                postings[terms[i]] = new Postings();
+            }
+            postings[terms[i]].add(id, freqs[i]);
+        }
+    }
+
+    @Override
+    public Optional<Match<OptimizedTermVector>> findMatch(OptimizedTermVector member, double threshold) {
+        if (threshold > 1) {
+            // leaders without common term are at distance 1, so they'd match as well
+            return scanAll(member, threshold);
+        }
+        var scratch = scratchPool.take();
+        try {
+            return findMatch(member, threshold, scratch.ensure(leaders.size()));
+        } finally {
+            scratchPool.release(scratch);
+        }
+    }
+
+    private Optional<Match<OptimizedTermVector>> findMatch(OptimizedTermVector member, double threshold,
+                                                           Scratch scratch) {
+        var partialDot = scratch.partialDot;
+        var candidates = scratch.candidates;
+        var terms = member.ids();
+        var freqs = member.freqs();
+        var lists = new Postings[terms.length];
+        // visit rarest terms first, terms not present in any leader come for free
+        var order = new long[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            lists[i] = terms[i] < postings.length ? postings[terms[i]] : null;
+            order[i] = ((long) (lists[i] == null ? 0 : lists[i].size) << 32) | i;
+        }
+        Arrays.sort(order);
+        // norm of the member restricted to terms from k-th on in visiting order
+        var remaining = new double[terms.length + 1];
+        for (int k = terms.length - 1; k >= 0; k--) {
+            var f = freqs[(int) order[k]];
+            remaining[k] = remaining[k + 1] + f * f;
+        }
+        for (int k = 0; k <= terms.length; k++) {
+            remaining[k] = Math.sqrt(remaining[k]);
+        }
+
+        // similarity needed to get under threshold, relative to the member's magnitude
+        var required = (1 - threshold) * member.magnitude();
+        int count = 0;
+        int k = 0;
+        for (; k < terms.length; k++) {
+            if (remaining[k] * (1 + SLACK) <= required) {
+                // a leader not seen so far cannot match anymore
+                break;
+            }
+            var i = (int) order[k];
+            var list = lists[i];
+            if (list == null) {
+                continue;
+            }
+            for (int p = 0; p < list.size; p++) {
+                var id = list.ids[p];
+                if (partialDot[id] == 0) {
+                    candidates[count++] = id;
+                }
+                partialDot[id] += (double) freqs[i] * list.freqs[p];
+            }
+        }
+
+        // Terms shared by most leaders, like metadata keys, make every leader a candidate, and keep the bound too
+        // loose to drop any. Then the rest of the postings is cheaper to visit than joining every candidate,
+        // and it completes the dot products of all candidates.
+        long rest = 0;
+        for (int r = k; r < terms.length; r++) {
+            var list = lists[(int) order[r]];
+            rest += list == null ? 0 : list.size;
+        }
+        var exact = rest <= (long) count * POSTINGS_PER_JOIN;
+        if (exact) {
+            for (; k < terms.length; k++) {
+                var i = (int) order[k];
+                var list = lists[i];
+                if (list == null) {
+                    continue;
+                }
+                for (int p = 0; p < list.size; p++) {
+                    var id = list.ids[p];
+                    if (partialDot[id] != 0) {
+                        partialDot[id] += (double) freqs[i] * list.freqs[p];
+                    }
+                }
+            }
+        }
+
+        Cluster<OptimizedTermVector> best = null;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        int bestId = Integer.MAX_VALUE;
+        for (int c = 0; c < count; c++) {
+            var id = candidates[c];
+            var leader = leaders.get(id).leader();
+            var dot = partialDot[id];
+            partialDot[id] = 0;
+            double distance;
+            if (exact) {
+                // same expression as cosineDistance, the dot product is an exact integer in both
+                distance = 1 - dot / (leader.magnitude() * member.magnitude());
+            } else {
+                var upperBound = dot + remaining[k] * leader.magnitude();
+                if (upperBound * (1 + SLACK) <= required * leader.magnitude()) {
+                    continue;
+                }
+                distance = leader.cosineDistance(member);
+            }
+            if (distance < bestDistance || (distance == bestDistance && id < bestId)) {
+                best = leaders.get(id);
+                bestDistance = distance;
+                bestId = id;
+            }
+        }
+        if (best == null || !(bestDistance < threshold)) {
+            return Optional.empty();
+        }
+        return Optional.of(new Match<>(best, bestDistance));
+    }
+
+    private Optional<Match<OptimizedTermVector>> scanAll(OptimizedTermVector member, double threshold) {
+        Match<OptimizedTermVector> best = null;
+        for (var cluster : leaders) {
+            var distance = cluster.leader().cosineDistance(member);
+            if (best == null || distance < best.distance()) {
+                best = new Match<>(cluster, distance);
+            }
+        }
+        return Optional.ofNullable(best).filter(m -> m.distance() < threshold);
+    }
+
+    @Override
+    public void clear() {
+        leaders.clear();
+        Arrays.fill(postings, null);
+    }
+
+    /**
+     * Scratch space for scoring, indexed by leader, zeroed after every lookup
+     */
+    private static class Scratch {
+        private double[] partialDot = new double[64];
+        private int[] candidates = new int[64];
+
+        Scratch ensure(int leaders) {
+            if (leaders > partialDot.length) {
+                var length = Math.max(leaders, partialDot.length * 2);
+                partialDot = new double[length];
+                candidates = new int[length];
+            }
+            return this;
+        }
+    }
+
+    private static class Postings {
+        private int[] ids = new int[4];
+        private int[] freqs = new int[4];
+        private int size;
+
+        void add(int id, int freq) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            ids[size] = id;
+            freqs[size] = freq;
+            size++;
+        }
+    }
+}
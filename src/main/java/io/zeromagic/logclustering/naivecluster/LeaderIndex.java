@@ -0,0 +1,34 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import java.util.Optional;
+
+/**
+ * Lookup structure over cluster leaders used by {@link NaiveClustering} to find the closest cluster.
+ * Implementations are not required to be thread-safe while leaders are added, but once no more leaders are added,
+ * {@link #findMatch} can be called from multiple threads at once.
+ *
+ * @param <T> vector type of the leaders
+ */
+public interface LeaderIndex<T> {
+    /**
+     * Register leader of a newly created cluster. Clusters are added in the order they are created.
+     * @param cluster
+     */
+    void add(Cluster<T> cluster);
+
+    /**
+     * Find the cluster whose leader is closest to the member, if its distance is below threshold.
+     * When multiple leaders are equally close, the one added first wins.
+     * @param member
+     * @param threshold
+     * @return best matching cluster and distance of its leader from the member
+     */
+    Optional<Match<T>> findMatch(T member, double threshold);
+
+    /**
+     * Remove all leaders from the index.
+     */
+    void clear();
+
+    record Match<T>(Cluster<T> cluster, double distance) {}
+}
@@ -0,0 +1,36 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Brute force index, that computes distance to every leader.
+ */
+public class LinearScanIndex<T> implements LeaderIndex<T> {
+    private final Metric<T> metric;
+    private final List<Cluster<T>> clusters = new ArrayList<>();
+
+    public LinearScanIndex(Metric<T> metric) {
+        this.metric = metric;
+    }
+
+    @Override
+    public void add(Cluster<T> cluster) {
+        clusters.add(cluster);
+    }
+
+    @Override
+    public Optional<Match<T>> findMatch(T member, double threshold) {
+        return clusters.parallelStream()
+                .map(c -> new Match<>(c, metric.distance(c.leader(), member)))
+                .min(Comparator.comparingDouble(Match::distance))
+                .filter(m -> m.distance() < threshold);
+    }
+
+    @Override
+    public void clear() {
+        clusters.clear();
+    }
+}
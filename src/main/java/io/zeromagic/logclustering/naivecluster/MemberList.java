@@ -0,0 +1,118 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+/**
+ * Append-only list of cluster members, stored in chunks that double in size. Appending never copies members,
+ * unlike {@link java.util.concurrent.CopyOnWriteArrayList}, which copies the whole cluster for every member.
+ * <p>
+ * Appends are serialized by a lock, reads take no lock. A member is published by the volatile size, so readers
+ * see every member below the size they read. Iteration covers the members present when it started.
+ */
+final class MemberList<T> extends AbstractList<T> implements RandomAccess {
+    private static final int FIRST_CHUNK_BITS = 4;
+    private static final int FIRST_CHUNK = 1 << FIRST_CHUNK_BITS;
+
+    // chunk k holds FIRST_CHUNK << k members
+    private volatile Object[][] chunks = new Object[1][FIRST_CHUNK];
+    private volatile int size;
+
+    MemberList() {
+    }
+
+    MemberList(T first) {
+        chunks[0][0] = first;
+        size = 1;
+    }
+
+    private static int chunk(int index) {
+        return 31 - Integer.numberOfLeadingZeros(index + FIRST_CHUNK) - FIRST_CHUNK_BITS;
+    }
+
+    private static int offset(int index) {
+        var shifted = index + FIRST_CHUNK;
+        return shifted - Integer.highestOneBit(shifted);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index %d out of bounds for size %d".formatted(index, size));
+        }
+        return (T) chunks[chunk(index)][offset(index)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized boolean add(T member) {
+        append(member);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean addAll(Collection<? extends T> members) {
+        // copy first, so that adding a list to itself terminates
+        for (var member : members.toArray()) {
+            @SuppressWarnings("unchecked")
+            var m = (T) member;
+            append(m);
+        }
+        return !members.isEmpty();
+    }
+
+    private void append(T member) {
+        var index = size;
+        if (index == Integer.MAX_VALUE - FIRST_CHUNK) {
+            throw new IllegalStateException("Cluster is full");
+        }
+        var k = chunk(index);
+        var current = chunks;
+        if (k == current.length) {
+            var grown = new Object[k + 1][];
+            System.arraycopy(current, 0, grown, 0, k);
+            grown[k] = new Object[FIRST_CHUNK << k];
+            chunks = current = grown;
+        }
+        current[k][offset(index)] = member;
+        size = index + 1;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        var snapshot = size;
+        return new Iterator<>() {
+            int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < snapshot;
+            }
+
+            @Override
+            public T next() {
+                if (index >= snapshot) {
+                    throw new NoSuchElementException();
+                }
+                return get(index++);
+            }
+        };
+    }
+
+    @Override
+    public void forEach(Consumer<? super T> action) {
+        var snapshot = size;
+        for (int i = 0; i < snapshot; i++) {
+            action.accept(get(i));
+        }
+    }
+}
@@ -1,46 +1,61 @@
 package io.zeromagic.logclustering.naivecluster;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
 
-public class NaiveClustering<T> {
+public class NaiveClustering<T> implements Clustering<T> {
     private final Metric<T> metric;
     private final double threshold;
     private final List<Cluster<T>> clusters = new ArrayList<>();
+    private final LeaderIndex<T> index;
+    private final Function<T, Cluster<T>> newCluster;
 
     public NaiveClustering(Metric<T> metric, double threshold) {
+        this(metric, threshold, new LinearScanIndex<>(metric));
+    }
+
+    public NaiveClustering(Metric<T> metric, double threshold, LeaderIndex<T> index) {
+        this(metric, threshold, index, Cluster::of);
+    }
+
+    /**
+     * @param newCluster creates cluster led by a member, e.g. {@link Cluster#sampled(Object, int)}
+     */
+    public NaiveClustering(Metric<T> metric, double threshold, LeaderIndex<T> index, Function<T, Cluster<T>> newCluster) {
         this.metric = metric;
         this.threshold = threshold;
+        this.index = index;
+        this.newCluster = newCluster;
     }
 
-    public void add(T member) {
-        var bestMatch = findMatch(member);
+    @Override
+    public Cluster<T> add(T member) {
+        var bestMatch = index.findMatch(member, threshold);
         if (bestMatch.isPresent()) {
-            bestMatch.get().members().add(member);
-        } else {
-            clusters.add(Cluster.of(member));
+            var cluster = bestMatch.get().cluster();
+            cluster.add(member, bestMatch.get().distance());
+            return cluster;
         }
+        var cluster = newCluster.apply(member);
+        clusters.add(cluster);
+        index.add(cluster);
+        return cluster;
     }
 
-    private Optional<Cluster<T>> findMatch(T member) {
-        record DistanceTo(Cluster<?> cluster, double distance) {};
-        var bestMatch = clusters.parallelStream()
-                .map(c -> new DistanceTo(c, metric.distance(c.leader(), member)))
-                .min(Comparator.comparingDouble(DistanceTo::distance))
-                .filter(d -> d.distance() < threshold)
-                .map(d-> (Cluster<T>)d.cluster);
-        return bestMatch;
+    @Override
+    public void seed(Cluster<T> cluster) {
+        clusters.add(cluster);
+        index.add(cluster);
     }
 
-
+    @Override
     public List<Cluster<T>> getClusters() {
         return clusters;
     }
 
     public void refine(int largerThan, double deviationThreshold) {
+        var changed = false;
         // this is just much clearer to do with a listiterator than streams
         for(var it = clusters.listIterator(); it.hasNext();) {
             var cluster = it.next();
@@ -55,7 +70,12 @@ public class NaiveClustering<T> {
                 var refinedClustering = new NaiveClustering<T>(metric, threshold);
                 cluster.members().forEach(refinedClustering::add);
                 refinedClustering.clusters.forEach(it::add);
+                changed = true;
             }
         }
+        if (changed) {
+            index.clear();
+            clusters.forEach(index::add);
+        }
     }
 }
@@ -1,59 +1,124 @@
 package io.zeromagic.logclustering.naivecluster;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Thread-safe version of naive clustering, that never blocks.
+ * <p>
+ * Leaders are kept in an append-only array, the number of filled slots acting as version of the leader set.
+ * A member is compared to all leaders present, and if none of them matches it tries to claim the next free slot
+ * with compare-and-set. When another thread was faster, only the leaders appended since the last scan are compared
+ * before trying again. New leader is therefore only created when it is not within threshold of any leader before it,
+ * same as in sequential clustering.
+ * <p>
+ * Leaders are compared by a linear scan, not through a {@link LeaderIndex}: indexes are not safe to query while
+ * leaders are added, and guarding them would block the threads this class is meant to keep running. Every member
+ * thus costs a distance to every leader, so this scales with threads but not with the number of clusters, and
+ * gives up the inverted index of term vectors and the scan or HNSW index of embeddings. With many clusters
+ * {@link ShardedClustering} is faster, as every shard keeps its own index.
+ */
+public class NaiveClusteringParallel<T> implements Clustering<T> {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 16;
 
-// Thread-safe version of naive clustering
-public class NaiveClusteringParallel<T> {
     private final Metric<T> metric;
     private final double threshold;
-    private final List<Cluster<T>> clusters = new ArrayList<>();
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Function<T, Cluster<T>> newCluster;
+    // leader slots, allocated in chunks as they fill up
+    private final AtomicReferenceArray<AtomicReferenceArray<Cluster<T>>> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
 
     public NaiveClusteringParallel(Metric<T> metric, double threshold) {
+        this(metric, threshold, Cluster::of);
+    }
+
+    /**
+     * @param newCluster creates cluster led by a member, e.g. {@link Cluster#sampled(Object, int)}
+     */
+    public NaiveClusteringParallel(Metric<T> metric, double threshold, Function<T, Cluster<T>> newCluster) {
         this.metric = metric;
         this.threshold = threshold;
+        this.newCluster = newCluster;
     }
 
-    public void add(T member) {
-        var bestMatch = findMatch(member);
-        if (bestMatch.isPresent()) {
-            bestMatch.get().members().add(member);
-        } else try {
-            lock.writeLock().lock();
-            // Check again in case another thread added a cluster
-            bestMatch = findMatch(member);
-            if (bestMatch.isPresent()) {
-                bestMatch.get().members().add(member);
-            } else {
-                clusters.add(Cluster.of(member));
+    @Override
+    public Cluster<T> add(T member) {
+        int seen = 0;
+        Cluster<T> best = null;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        Cluster<T> created = null;
+        while (true) {
+            for (Cluster<T> c; (c = get(seen)) != null; seen++) {
+                var distance = metric.distance(c.leader(), member);
+                if (distance < bestDistance) {
+                    best = c;
+                    bestDistance = distance;
+                }
+            }
+            if (best != null && bestDistance < threshold) {
+                best.add(member, bestDistance);
+                return best;
             }
-        } finally {
-            lock.writeLock().unlock();
+            if (created == null) {
+                created = newCluster.apply(member);
+            }
+            if (claim(seen, created)) {
+                return created;
+            }
+            // another thread appended a leader into that slot, compare with it (and anything after it) next
         }
     }
 
-    private Optional<Cluster<T>> findMatch(T member) {
-        try {
-            lock.readLock().lock();
-            var bestMatch = clusters.parallelStream()
-                    .min(Comparator.comparingDouble(c -> metric.distance(c.leader(), member)))
-                    .filter(c -> metric.distance(c.leader(), member) < threshold);
-            return bestMatch;
-        } finally {
-            lock.readLock().unlock();
+    private Cluster<T> get(int index) {
+        var chunk = chunks.get(index >>> CHUNK_BITS);
+        return chunk == null ? null : chunk.get(index & (CHUNK_SIZE - 1));
+    }
+
+    /**
+     * Append cluster after all present ones. Must not run concurrently with {@link #add(Object)}.
+     */
+    @Override
+    public void seed(Cluster<T> cluster) {
+        int index = 0;
+        while (get(index) != null) {
+            index++;
         }
+        claim(index, cluster);
     }
 
+    private boolean claim(int index, Cluster<T> cluster) {
+        var chunkIndex = index >>> CHUNK_BITS;
+        if (chunkIndex >= MAX_CHUNKS) {
+            throw new IllegalStateException("Too many clusters");
+        }
+        var chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            chunks.compareAndSet(chunkIndex, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+            chunk = chunks.get(chunkIndex);
+        }
+        return chunk.compareAndSet(index & (CHUNK_SIZE - 1), null, cluster);
+    }
 
+    /**
+     * @return snapshot of current clusters in order of creation
+     */
+    @Override
     public List<Cluster<T>> getClusters() {
-        return clusters;
+        var result = new ArrayList<Cluster<T>>();
+        for (Cluster<T> c; (c = get(result.size())) != null; ) {
+            result.add(c);
+        }
+        return result;
     }
 
+    /**
+     * Split large clusters with outlying members. Must not run concurrently with {@link #add(Object)}.
+     */
     public void refine(int largerThan, double deviationThreshold) {
+        var clusters = getClusters();
         // this is just much clearer to do with a listiterator than streams
         for(var it = clusters.listIterator(); it.hasNext();) {
             var cluster = it.next();
@@ -67,8 +132,14 @@ public class NaiveClusteringParallel<T> {
                 it.remove();
                 var refinedClustering = new NaiveClusteringParallel<T>(metric, threshold);
                 cluster.members().forEach(refinedClustering::add);
-                refinedClustering.clusters.forEach(it::add);
+                refinedClustering.getClusters().forEach(it::add);
             }
         }
+        for (int i = 0; i < MAX_CHUNKS; i++) {
+            chunks.set(i, null);
+        }
+        for (int i = 0; i < clusters.size(); i++) {
+            claim(i, clusters.get(i));
+        }
     }
 }
@@ -0,0 +1,132 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Uniform random sample of at most {@code capacity} members out of all added, kept with reservoir sampling
+ * (Algorithm R). Memory doesn't grow with the number of members, the list only holds the sample, and
+ * {@link #seen()} counts all of them. Thread-safe, iteration covers a copy of the sample.
+ */
+final class ReservoirList<T> extends AbstractList<T> implements RandomAccess {
+    private final Object[] sample;
+    private int size;
+    private long seen;
+
+    ReservoirList(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Reservoir capacity must be positive, got " + capacity);
+        }
+        this.sample = new Object[capacity];
+    }
+
+    ReservoirList(T first, int capacity) {
+        this(capacity);
+        add(first);
+    }
+
+    @Override
+    public synchronized boolean add(T member) {
+        seen++;
+        if (size < sample.length) {
+            sample[size++] = member;
+            return true;
+        }
+        var slot = ThreadLocalRandom.current().nextLong(seen);
+        if (slot < sample.length) {
+            sample[(int) slot] = member;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> members) {
+        if (members instanceof ReservoirList<? extends T> other) {
+            merge(other);
+            return true;
+        }
+        var changed = false;
+        for (var member : members.toArray()) {
+            @SuppressWarnings("unchecked")
+            var m = (T) member;
+            changed |= add(m);
+        }
+        return changed;
+    }
+
+    /**
+     * Replace the sample with a sample of the union of both inputs, drawing from the inputs without replacement.
+     * Every draw takes a random sampled member of the input it falls into.
+     */
+    private void merge(ReservoirList<? extends T> other) {
+        List<Object> theirs;
+        long theirSeen;
+        synchronized (other) {
+            theirs = new ArrayList<>(Arrays.asList(other.sample).subList(0, other.size));
+            theirSeen = other.seen;
+        }
+        synchronized (this) {
+            var mine = new ArrayList<>(Arrays.asList(sample).subList(0, size));
+            // remaining inputs of either side
+            long myRemaining = seen;
+            long theirRemaining = theirSeen;
+            var random = ThreadLocalRandom.current();
+            int n = 0;
+            while (n < sample.length && (!mine.isEmpty() || !theirs.isEmpty())) {
+                var fromMine = theirs.isEmpty()
+                        || (!mine.isEmpty() && random.nextLong(myRemaining + theirRemaining) < myRemaining);
+                if (fromMine) {
+                    myRemaining--;
+                } else {
+                    theirRemaining--;
+                }
+                var source = fromMine ? mine : theirs;
+                var index = random.nextInt(source.size());
+                sample[n++] = source.get(index);
+                source.set(index, source.getLast());
+                source.removeLast();
+            }
+            Arrays.fill(sample, n, sample.length, null);
+            size = n;
+            seen += theirSeen;
+        }
+    }
+
+    /**
+     * @return number of members ever added, sampled or not
+     */
+    synchronized long seen() {
+        return seen;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index %d out of bounds for size %d".formatted(index, size));
+        }
+        return (T) sample[index];
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<T> iterator() {
+        Object[] copy;
+        synchronized (this) {
+            copy = Arrays.copyOf(sample, size);
+        }
+        return (Iterator<T>) Arrays.asList(copy).iterator();
+    }
+}
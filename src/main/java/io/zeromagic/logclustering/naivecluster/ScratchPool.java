@@ -0,0 +1,26 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Scratch space of index lookups. Every lookup borrows its own, so that lookups of an index no longer being modified
+ * can run concurrently. There are as many instances as there were lookups at the same time.
+ */
+final class ScratchPool<S> {
+    private final ConcurrentLinkedQueue<S> idle = new ConcurrentLinkedQueue<>();
+    private final Supplier<S> factory;
+
+    ScratchPool(Supplier<S> factory) {
+        this.factory = factory;
+    }
+
+    S take() {
+        var scratch = idle.poll();
+        return scratch == null ? factory.get() : scratch;
+    }
+
+    void release(S scratch) {
+        idle.offer(scratch);
+    }
+}
@@ -0,0 +1,170 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Clustering that distributes the input over multiple threads, each clustering its own share with
+ * {@link NaiveClustering}. Input is cut into chunks of fixed size, which are assigned to shards round-robin.
+ * <p>
+ * When clusters are requested, input is finished and clusters of the shards are merged in shard order:
+ * cluster whose leader is within threshold of an already merged leader joins that cluster, otherwise it is kept
+ * as a new cluster. For the same input the result is therefore always the same. Seeded clusters are merged before
+ * the shards, so that members of shard clusters close to a seeded leader join it. Shards don't see them, as a cluster
+ * is not to be shared by threads.
+ * <p>
+ * {@link #add(Object)} is meant to be called from a single thread. As the cluster of a member is not known there,
+ * an optional listener gets every member with its shard cluster, on the thread of the shard.
+ */
+public class ShardedClustering<T> implements Clustering<T> {
+    private static final int CHUNK_SIZE = 256;
+
+    private final double threshold;
+    private final Supplier<LeaderIndex<T>> indexFactory;
+    private final BiConsumer<Cluster<T>, T> listener;
+    private final List<Shard> shards = new ArrayList<>();
+    private final List<Cluster<T>> seeds = new ArrayList<>();
+    private List<T> chunk = new ArrayList<>(CHUNK_SIZE);
+    private int nextShard;
+    private List<Cluster<T>> merged;
+
+    public ShardedClustering(Metric<T> metric, double threshold, Supplier<LeaderIndex<T>> indexFactory, int shardCount) {
+        this(metric, threshold, indexFactory, shardCount, Cluster::of, (cluster, member) -> {});
+    }
+
+    /**
+     * @param newCluster creates cluster led by a member, e.g. {@link Cluster#sampled(Object, int)}
+     * @param listener   gets every added member with its shard cluster
+     */
+    public ShardedClustering(Metric<T> metric, double threshold, Supplier<LeaderIndex<T>> indexFactory, int shardCount,
+                             Function<T, Cluster<T>> newCluster, BiConsumer<Cluster<T>, T> listener) {
+        this.threshold = threshold;
+        this.indexFactory = indexFactory;
+        this.listener = listener;
+        for (int i = 0; i < shardCount; i++) {
+            var shard = new Shard(new NaiveClustering<>(metric, threshold, indexFactory.get(), newCluster));
+            shards.add(shard);
+            Thread.ofPlatform().name("cluster-shard-" + i).daemon().start(shard::run);
+        }
+    }
+
+    /**
+     * @return always null, shard clusters are merged only at the end
+     */
+    @Override
+    public Cluster<T> add(T member) {
+        if (merged != null) {
+            throw new IllegalStateException("Clusters were already merged");
+        }
+        chunk.add(member);
+        if (chunk.size() == CHUNK_SIZE) {
+            dispatch();
+        }
+        return null;
+    }
+
+    @Override
+    public void seed(Cluster<T> cluster) {
+        if (merged != null) {
+            throw new IllegalStateException("Clusters were already merged");
+        }
+        seeds.add(cluster);
+    }
+
+    private void dispatch() {
+        try {
+            shards.get(nextShard).queue.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while dispatching to shard", e);
+        }
+        nextShard = (nextShard + 1) % shards.size();
+        chunk = new ArrayList<>(CHUNK_SIZE);
+    }
+
+    @Override
+    public List<Cluster<T>> getClusters() {
+        if (merged == null) {
+            if (!chunk.isEmpty()) {
+                dispatch();
+            }
+            // empty chunk ends the shard
+            for (int i = 0; i < shards.size(); i++) {
+                chunk = new ArrayList<>(0);
+                dispatch();
+            }
+            merged = merge();
+        }
+        return merged;
+    }
+
+    private List<Cluster<T>> merge() {
+        var result = new ArrayList<>(seeds);
+        var index = indexFactory.get();
+        seeds.forEach(index::add);
+        for (var shard : shards) {
+            try {
+                shard.done.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for shard", e);
+            }
+            if (shard.failure != null) {
+                throw new IllegalStateException("Clustering shard failed", shard.failure);
+            }
+            for (var cluster : shard.clustering.getClusters()) {
+                var match = index.findMatch(cluster.leader(), threshold);
+                if (match.isPresent()) {
+                    // distances of its members stay relative to the shard leader, which is within threshold
+                    match.get().cluster().merge(cluster);
+                } else {
+                    result.add(cluster);
+                    index.add(cluster);
+                }
+            }
+        }
+        return result;
+    }
+
+    private class Shard {
+        private final NaiveClustering<T> clustering;
+        private final BlockingQueue<List<T>> queue = new ArrayBlockingQueue<>(4);
+        private final Semaphore done = new Semaphore(0);
+        private volatile Throwable failure;
+
+        Shard(NaiveClustering<T> clustering) {
+            this.clustering = clustering;
+        }
+
+        void run() {
+            try {
+                while (true) {
+                    var members = queue.take();
+                    if (members.isEmpty()) {
+                        break;
+                    }
+                    if (failure == null) {
+                        try {
+                            for (var member : members) {
+                                listener.accept(clustering.add(member), member);
+                            }
+                        } catch (Throwable t) {
+                            // keep draining the queue, so that producer doesn't block, report on merge
+                            failure = t;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                failure = e;
+            } finally {
+                done.release();
+            }
+        }
+    }
+}
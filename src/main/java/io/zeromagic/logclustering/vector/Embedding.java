@@ -1,83 +1,112 @@
 package io.zeromagic.logclustering.vector;
 
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.http.client.jdk.JdkHttpClient;
 import dev.langchain4j.model.embedding.DimensionAwareEmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.e5smallv2q.E5SmallV2QuantizedEmbeddingModel;
-import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
-import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
 import io.zeromagic.logclustering.input.LogEntry;
 
-import java.net.http.HttpClient;
 import java.util.List;
-import java.util.function.Supplier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.IntStream;
 
-public class Embedding {
+public class Embedding implements AutoCloseable {
 
     private final DimensionAwareEmbeddingModel model;
     private final Model meta;
-    private int counter = 0;
-    private int tokenCount = 0;
+    private final HttpEmbeddingModel.Config http;
+    private final Usage usage;
+
+    /**
+     * Progress shared by all instances of the same model
+     */
+    private static final class Usage {
+        private final AtomicInteger counter = new AtomicInteger();
+        private final AtomicLong tokenCount = new AtomicLong();
+    }
 
     public enum Model {
-        E5SmallV2Quantized(E5SmallV2QuantizedEmbeddingModel::new, "query:", 0.18),
-        BGESmall1_5Quantized(BgeSmallEnV15QuantizedEmbeddingModel::new,
+        E5SmallV2Quantized(http -> new E5SmallV2QuantizedEmbeddingModel(), "query:", 0.18),
+        BGESmall1_5Quantized(http -> new BgeSmallEnV15QuantizedEmbeddingModel(),
                 "Represent this sentence for searching relevant passages: ", 0.18),
-        AllMiniLM_Ollama(() -> OllamaEmbeddingModel.builder()
-                .baseUrl("http://localhost:11434")
-                .modelName("all-minilm")
-                .build(), "", 0.18),
-        Nomic_Embed_NotebookLM(() -> OpenAiEmbeddingModel.builder()
-                .baseUrl("http://localhost:1234/v1")
-                .modelName("text-embedding-nomic-embed-text-v1.5")
-                // use HTTP 1.1 only, LM Studio cannot do 2.0
-                // https://github.com/langchain4j/langchain4j/issues/2758#issuecomment-2749439972
-                .httpClientBuilder(JdkHttpClient.builder().httpClientBuilder(HttpClient.newBuilder().version(
-                        HttpClient.Version.HTTP_1_1)))
-                .build(), "clustering: ", 0.1),
-        BGESmall1_5NotebookLM(() -> OpenAiEmbeddingModel.builder()
-                .baseUrl("http://localhost:1234/v1")
-                .modelName("text-embedding-bge-small-en")
-                // use HTTP 1.1 only, LM Studio cannot do 2.0
-                // https://github.com/langchain4j/langchain4j/issues/2758#issuecomment-2749439972
-                .httpClientBuilder(JdkHttpClient.builder().httpClientBuilder(HttpClient.newBuilder().version(
-                        HttpClient.Version.HTTP_1_1)))
-                .build(), "Represent this sentence for searching relevant passages: ", 0.075),
-
-        Nomic_Embed_Ollama(() -> OllamaEmbeddingModel.builder()
-                .baseUrl("http://localhost:11434")
-                .modelName("nomic-embed-text")
-                .build(), "clustering: ", 0.1),
+        AllMiniLM_Ollama(http -> new HttpEmbeddingModel(HttpEmbeddingModel.Api.OLLAMA,
+                "http://localhost:11434", "all-minilm", http), "", 0.18),
+        Nomic_Embed_NotebookLM(http -> new HttpEmbeddingModel(HttpEmbeddingModel.Api.OPENAI,
+                "http://localhost:1234/v1", "text-embedding-nomic-embed-text-v1.5", http), "clustering: ", 0.1),
+        BGESmall1_5NotebookLM(http -> new HttpEmbeddingModel(HttpEmbeddingModel.Api.OPENAI,
+                "http://localhost:1234/v1", "text-embedding-bge-small-en", http),
+                "Represent this sentence for searching relevant passages: ", 0.075),
+
+        Nomic_Embed_Ollama(http -> new HttpEmbeddingModel(HttpEmbeddingModel.Api.OLLAMA,
+                "http://localhost:11434", "nomic-embed-text", http), "clustering: ", 0.1),
 
         ;
 
-        private final Supplier<DimensionAwareEmbeddingModel> factory;
+        // served models take the configuration of the HTTP client
+        private final Function<HttpEmbeddingModel.Config, DimensionAwareEmbeddingModel> factory;
         private final String prefix;
         private final double threshold;
 
-        Model(Supplier<DimensionAwareEmbeddingModel> factory, String prefix, double threshold) {
+        Model(Function<HttpEmbeddingModel.Config, DimensionAwareEmbeddingModel> factory, String prefix,
+              double threshold) {
             this.factory = factory;
             this.prefix = prefix;
             this.threshold = threshold;
         }
 
-        DimensionAwareEmbeddingModel create() {
-            return factory.get();
+        DimensionAwareEmbeddingModel create(HttpEmbeddingModel.Config http) {
+            return factory.apply(http);
         }
 
     }
 
     public Embedding(Model model) {
+        this(model, HttpEmbeddingModel.Config.DEFAULT);
+    }
+
+    /**
+     * @param http configuration of the client of models served over HTTP
+     */
+    public Embedding(Model model, HttpEmbeddingModel.Config http) {
+        this(model, http, new Usage());
+    }
+
+    private Embedding(Model model, HttpEmbeddingModel.Config http, DimensionAwareEmbeddingModel instance,
+                      Usage usage) {
         this.meta = model;
-        this.model = model.create();
+        this.http = http;
+        this.model = instance;
+        this.usage = usage;
+    }
+
+    private Embedding(Model model, HttpEmbeddingModel.Config http, Usage usage) {
+        this(model, http, model.create(http), usage);
+    }
+
+    /**
+     * Create another instance of the model, for use by another thread. Instances share the progress accounting, and
+     * served models share the client and its limit of requests in flight.
+     */
+    public Embedding copy() {
+        if (model instanceof HttpEmbeddingModel served) {
+            return new Embedding(meta, http, served.copy(), usage);
+        }
+        return new Embedding(meta, http, usage);
+    }
+
+    @Override
+    public void close() {
+        if (model instanceof HttpEmbeddingModel served) {
+            served.close();
+        }
     }
 
     public EmbeddingVector process(LogEntry logEntry) {
         var text = makeQuery(logEntry);
         var result = model.embed(text.toString());
-        tokenCount += result.tokenUsage().inputTokenCount();
+        usage.tokenCount.addAndGet(result.tokenUsage().inputTokenCount());
         return new EmbeddingVector(result.content().vector(), logEntry);
     }
 
@@ -86,7 +115,7 @@ public class Embedding {
                 .toList();
         var result = model.embedAll(segments);
         if (result.tokenUsage() != null) {
-            tokenCount += result.tokenUsage().inputTokenCount();
+            usage.tokenCount.addAndGet(result.tokenUsage().inputTokenCount());
         }
         return IntStream.range(0, batch.size())
                 .mapToObj(i -> new EmbeddingVector(result.content().get(i).vector(), batch.get(i)))
@@ -95,9 +124,17 @@ public class Embedding {
 
     private String makeQuery(LogEntry logEntry) {
         // small progress indicator, because this is slow on CPU.
-        if (++counter % 100 == 0) {
-            System.out.printf("Processed entries: %d, token count: %d\n", counter, tokenCount);
+        var count = usage.counter.incrementAndGet();
+        if (count % 100 == 0) {
+            System.out.printf("Processed entries: %d, token count: %d\n", count, usage.tokenCount.get());
         }
+        return query(logEntry);
+    }
+
+    /**
+     * @return text the model embeds for the entry
+     */
+    public String query(LogEntry logEntry) {
         var m = logEntry.metadata();
         StringBuilder text = new StringBuilder()
                 .append(meta.prefix)
@@ -110,8 +147,27 @@ public class Embedding {
         return text.toString();
     }
 
+    /**
+     * @return text identifying the embedding of the entry in a cache: the parts of the {@link #query} that make up the
+     * message, but not pod and timestamp, so that the same message logged by another pod or on another day reuses the
+     * embedding. Those fields are only a few tokens of the query, and don't decide the cluster of an entry.
+     */
+    public String cacheKey(LogEntry logEntry) {
+        var m = logEntry.metadata();
+        return String.join("\0", String.valueOf(logEntry.body()), String.valueOf(m.get(LogEntry.MetadataKeys.LEVEL)),
+                String.valueOf(m.get(LogEntry.MetadataKeys.LOGGER_NAME)), String.valueOf(logEntry.exception()));
+    }
+
 
     public double threshold() {
         return meta.threshold;
     }
+
+    public Model model() {
+        return meta;
+    }
+
+    public int dimension() {
+        return model.dimension();
+    }
 }
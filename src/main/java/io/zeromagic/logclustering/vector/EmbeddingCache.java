@@ -0,0 +1,321 @@
+package io.zeromagic.logclustering.vector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Embeddings persisted in a memory mapped file, so that repeated runs over the same entries don't need the model.
+ * <p>
+ * Entries are keyed by 128 bits of SHA-256 of the model name and a text of the entry, see {@link Embedding#cacheKey}.
+ * The file is a fixed size hash table of slots, each holding a key, the time of its last access and the vector. A key
+ * lives within {@value #PROBES} slots from its hash position, and when all of them are taken, the least recently
+ * accessed one is replaced. The cache never grows beyond its capacity.
+ * <p>
+ * The file may be shared by concurrent runs. Every batch holds an exclusive lock on the file, and on a lock shared
+ * by all caches of the same file within the process, as file locks are held on behalf of the whole JVM.
+ */
+public final class EmbeddingCache implements Closeable {
+    public static final int DEFAULT_CAPACITY = 1 << 18;
+    private static final int MAGIC = 0x434d4245;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int CLOCK_OFFSET = 16;
+    private static final int PROBES = 16;
+    // slot: key high and low bits, last access, vector
+    private static final int VECTOR_OFFSET = 24;
+    private static final ConcurrentHashMap<Path, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+
+    private final FileChannel channel;
+    private final ReentrantLock lock;
+    private final String model;
+    private final int dimension;
+    private final int capacity;
+    private final int slotSize;
+    private final int slotsPerBuffer;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] buffers;
+    private long hits;
+    private long misses;
+
+    private EmbeddingCache(FileChannel channel, ReentrantLock lock, String model, int dimension, int capacity)
+            throws IOException {
+        this.channel = channel;
+        this.lock = lock;
+        this.model = model;
+        this.dimension = dimension;
+        this.capacity = capacity;
+        this.slotSize = VECTOR_OFFSET + dimension * Float.BYTES;
+        // whole slots per mapping, as a single mapping is limited to 2GB
+        this.slotsPerBuffer = Integer.MAX_VALUE / slotSize;
+        this.header = map(0, HEADER_SIZE);
+        this.buffers = new MappedByteBuffer[(capacity + slotsPerBuffer - 1) / slotsPerBuffer];
+        for (int i = 0; i < buffers.length; i++) {
+            var slots = Math.min(slotsPerBuffer, capacity - i * slotsPerBuffer);
+            buffers[i] = map(HEADER_SIZE + (long) i * slotsPerBuffer * slotSize, (long) slots * slotSize);
+        }
+    }
+
+    private MappedByteBuffer map(long position, long size) throws IOException {
+        var buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Open the cache file, or create it with given capacity when it doesn't exist. Capacity of an existing file is
+     * kept.
+     *
+     * @param model     name of the model, part of every key
+     * @param dimension dimension of the model's vectors, has to match the existing file
+     * @param capacity  number of vectors in a new file
+     */
+    public static EmbeddingCache open(Path file, String model, int dimension, int capacity) throws IOException {
+        if (dimension < 1 || capacity < PROBES) {
+            throw new IllegalArgumentException("Invalid dimension=%d, capacity=%d".formatted(dimension, capacity));
+        }
+        var lock = LOCKS.computeIfAbsent(file.toAbsolutePath().normalize(), p -> new ReentrantLock());
+        var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            lock.lock();
+            FileLock fileLock = null;
+            try {
+                fileLock = channel.lock();
+                if (channel.size() == 0) {
+                    var cache = new EmbeddingCache(channel, lock, model, dimension, capacity);
+                    cache.header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, dimension).putInt(12, capacity);
+                    return cache;
+                }
+                var existing = map(channel, HEADER_SIZE);
+                if (existing.getInt(0) != MAGIC || existing.getInt(4) != VERSION) {
+                    throw new IOException("Not an embedding cache: " + file);
+                }
+                if (existing.getInt(8) != dimension) {
+                    throw new IOException("Embedding cache %s holds vectors of dimension %d, not %d"
+                            .formatted(file, existing.getInt(8), dimension));
+                }
+                return new EmbeddingCache(channel, lock, model, dimension, existing.getInt(12));
+            } finally {
+                try {
+                    if (fileLock != null) {
+                        fileLock.release();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, int size) throws IOException {
+        if (channel.size() < size) {
+            throw new IOException("Truncated embedding cache");
+        }
+        var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Lock the cache within the process, and then the file among processes
+     */
+    private FileLock lock() throws IOException {
+        lock.lock();
+        try {
+            return channel.lock();
+        } catch (IOException | RuntimeException e) {
+            lock.unlock();
+            throw e;
+        }
+    }
+
+    private void unlock(FileLock fileLock) throws IOException {
+        try {
+            fileLock.release();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return cached vector of every query, or null for the queries not in the cache
+     */
+    public float[][] getAll(List<String> queries) throws IOException {
+        var keys = keys(queries);
+        var result = new float[queries.size()][];
+        var fileLock = lock();
+        try {
+            var clock = header.getLong(CLOCK_OFFSET);
+            for (int i = 0; i < queries.size(); i++) {
+                var slot = find(keys[2 * i], keys[2 * i + 1]);
+                if (slot < 0) {
+                    misses++;
+                    continue;
+                }
+                hits++;
+                var buffer = buffers[slot / slotsPerBuffer];
+                var offset = (slot % slotsPerBuffer) * slotSize;
+                buffer.putLong(offset + 16, ++clock);
+                result[i] = new float[dimension];
+                buffer.slice(offset + VECTOR_OFFSET, dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                        .asFloatBuffer().get(result[i]);
+            }
+            header.putLong(CLOCK_OFFSET, clock);
+        } finally {
+            unlock(fileLock);
+        }
+        return result;
+    }
+
+    /**
+     * Store vectors of the queries, replacing least recently used ones when out of space
+     */
+    public void putAll(List<String> queries, List<float[]> vectors) throws IOException {
+        var keys = keys(queries);
+        var fileLock = lock();
+        try {
+            var clock = header.getLong(CLOCK_OFFSET);
+            for (int i = 0; i < queries.size(); i++) {
+                var vector = vectors.get(i);
+                if (vector.length != dimension) {
+                    throw new IllegalArgumentException("Expected vector of dimension %d, got %d"
+                            .formatted(dimension, vector.length));
+                }
+                var hi = keys[2 * i];
+                var lo = keys[2 * i + 1];
+                var slot = victim(hi, lo);
+                var buffer = buffers[slot / slotsPerBuffer];
+                var offset = (slot % slotsPerBuffer) * slotSize;
+                // clear the key first, so that a run that crashed in the middle leaves an empty slot rather than
+                // the old key with a partly written vector. Lookups therefore don't stop at empty slots.
+                buffer.putLong(offset, 0).putLong(offset + 8, 0);
+                buffer.slice(offset + VECTOR_OFFSET, dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                        .asFloatBuffer().put(vector);
+                buffer.putLong(offset + 16, ++clock);
+                buffer.putLong(offset + 8, lo).putLong(offset, hi);
+            }
+            header.putLong(CLOCK_OFFSET, clock);
+        } finally {
+            unlock(fileLock);
+        }
+    }
+
+    /**
+     * @return slot holding the key, or -1. A crashed run may leave an empty slot within the probe distance of a key,
+     * so all probes are searched.
+     */
+    private int find(long hi, long lo) {
+        var slot = home(hi);
+        for (int p = 0; p < PROBES; p++) {
+            var buffer = buffers[slot / slotsPerBuffer];
+            var offset = (slot % slotsPerBuffer) * slotSize;
+            if (buffer.getLong(offset) == hi && buffer.getLong(offset + 8) == lo) {
+                return slot;
+            }
+            slot = slot + 1 == capacity ? 0 : slot + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return slot holding the key, first empty slot or least recently accessed slot within probe distance
+     */
+    private int victim(long hi, long lo) {
+        var slot = home(hi);
+        var empty = -1;
+        var oldest = slot;
+        var oldestAccess = Long.MAX_VALUE;
+        for (int p = 0; p < PROBES; p++) {
+            var buffer = buffers[slot / slotsPerBuffer];
+            var offset = (slot % slotsPerBuffer) * slotSize;
+            var slotHi = buffer.getLong(offset);
+            var slotLo = buffer.getLong(offset + 8);
+            if (slotHi == hi && slotLo == lo) {
+                return slot;
+            }
+            if (slotHi == 0 && slotLo == 0) {
+                // the key may still follow an empty slot
+                if (empty < 0) {
+                    empty = slot;
+                }
+            } else {
+                var access = buffer.getLong(offset + 16);
+                if (access < oldestAccess) {
+                    oldest = slot;
+                    oldestAccess = access;
+                }
+            }
+            slot = slot + 1 == capacity ? 0 : slot + 1;
+        }
+        return empty >= 0 ? empty : oldest;
+    }
+
+    private int home(long hi) {
+        return (int) Long.remainderUnsigned(hi, capacity);
+    }
+
+    /**
+     * @return high and low bits of key of every query, never both zero
+     */
+    private long[] keys(List<String> queries) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        var modelBytes = model.getBytes(StandardCharsets.UTF_8);
+        var keys = new long[2 * queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            digest.update(modelBytes);
+            digest.update((byte) 0);
+            var hash = digest.digest(queries.get(i).getBytes(StandardCharsets.UTF_8));
+            long hi = 0, lo = 0;
+            for (int b = 0; b < 8; b++) {
+                hi = hi << 8 | (hash[b] & 0xff);
+                lo = lo << 8 | (hash[8 + b] & 0xff);
+            }
+            keys[2 * i] = hi;
+            keys[2 * i + 1] = hi == 0 && lo == 0 ? 1 : lo;
+        }
+        return keys;
+    }
+
+    public long hits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long misses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
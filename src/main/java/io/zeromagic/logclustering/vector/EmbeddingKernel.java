@@ -0,0 +1,37 @@
+package io.zeromagic.logclustering.vector;
+
+/**
+ * Arithmetic on embedding vectors. SIMD implementation based on {@code jdk.incubator.vector} is used when the module
+ * is present in the JVM ({@code --add-modules jdk.incubator.vector}), otherwise plain scalar loops are used.
+ * Setting system property {@code logclustering.simd=false} forces the scalar implementation.
+ */
+public interface EmbeddingKernel {
+    EmbeddingKernel INSTANCE = select();
+
+    float dot(float[] a, float[] b);
+
+    /**
+     * Dot product of query with rows {@code [from..to)} of row-major matrix with {@code query.length} columns,
+     * stored into {@code result[from..to)}.
+     */
+    void dot(float[] query, float[] matrix, int from, int to, float[] result);
+
+    static EmbeddingKernel scalar() {
+        return ScalarKernel.INSTANCE;
+    }
+
+    private static EmbeddingKernel select() {
+        if (!Boolean.parseBoolean(System.getProperty("logclustering.simd", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return ScalarKernel.INSTANCE;
+        }
+        try {
+            // loaded reflectively, so that the class referencing incubator module is never touched without it
+            return (EmbeddingKernel) Class.forName(EmbeddingKernel.class.getPackageName() + ".SimdKernel")
+                    .getDeclaredField("INSTANCE").get(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.err.println("SIMD kernel not available, using scalar one: " + e);
+            return ScalarKernel.INSTANCE;
+        }
+    }
+}
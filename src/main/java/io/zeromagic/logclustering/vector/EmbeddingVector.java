@@ -19,20 +19,12 @@ public final class EmbeddingVector {
         if (magnitude >= 0) {
             return magnitude;
         }
-        float result = 0;
-        for (float v : vector) {
-            result += v * v;
-        }
-        magnitude = (float) Math.sqrt(result);
+        magnitude = (float) Math.sqrt(EmbeddingKernel.INSTANCE.dot(vector, vector));
         return magnitude;
     }
 
     public float dotProduct(EmbeddingVector other) {
-        float result = 0;
-        for (int i = 0; i < vector.length; i++) {
-            result += vector[i] * other.vector[i];
-        }
-        return result;
+        return EmbeddingKernel.INSTANCE.dot(vector, other.vector);
     }
 
     public double cosineDistance(EmbeddingVector other) {
@@ -0,0 +1,242 @@
+package io.zeromagic.logclustering.vector;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.DimensionAwareEmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedding model served over HTTP by Ollama or an OpenAI compatible server like LM Studio.
+ * <p>
+ * Every call is split into requests of at most {@link Config#requestSize()} texts, sent concurrently from virtual
+ * threads, and the vectors are put back into order of the texts. Instances created by {@link #copy()} share one
+ * client, and at most {@link Config#concurrency()} requests of all of them are in flight. Requests beyond that wait
+ * for a free slot, so that batches of several threads overlap without flooding the server. Failed requests are
+ * retried with exponential backoff when the failure looks transient.
+ */
+public class HttpEmbeddingModel extends DimensionAwareEmbeddingModel implements AutoCloseable {
+    public enum Api {
+        /**
+         * {@code POST /api/embed} of Ollama
+         */
+        OLLAMA,
+        /**
+         * {@code POST /embeddings} of OpenAI, base URL includes version, e.g. {@code http://localhost:1234/v1}
+         */
+        OPENAI
+    }
+
+    /**
+     * @param concurrency max requests in flight
+     * @param requestSize max texts per request
+     * @param retries     retries of a failed request
+     * @param backoff     delay before first retry, doubled for every next one
+     * @param timeout     timeout of a single request
+     */
+    public record Config(int concurrency, int requestSize, int retries, Duration backoff, Duration timeout) {
+        public static final Config DEFAULT = new Config(4, 32, 3, Duration.ofMillis(200), Duration.ofSeconds(60));
+
+        public Config {
+            if (concurrency < 1 || requestSize < 1 || retries < 0) {
+                throw new IllegalArgumentException("Invalid HTTP embedding concurrency=%d, requestSize=%d, retries=%d"
+                        .formatted(concurrency, requestSize, retries));
+            }
+        }
+
+        public Config withConcurrency(int concurrency) {
+            return new Config(concurrency, requestSize, retries, backoff, timeout);
+        }
+    }
+
+    private record Result(List<Embedding> embeddings, int tokens) {}
+
+    /**
+     * Client and request slots shared by copies of a model, closed with the last of them
+     */
+    private static final class Connection {
+        private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        // LM Studio cannot do HTTP 2.0
+        // https://github.com/langchain4j/langchain4j/issues/2758#issuecomment-2749439972
+        private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .executor(executor).build();
+        private final Semaphore inFlight;
+        private final AtomicInteger users = new AtomicInteger(1);
+
+        Connection(int concurrency) {
+            this.inFlight = new Semaphore(concurrency, true);
+        }
+
+        void release() {
+            if (users.decrementAndGet() == 0) {
+                client.close();
+                executor.close();
+            }
+        }
+    }
+
+    private final Api api;
+    private final URI endpoint;
+    private final String modelName;
+    private final Config config;
+    private final Connection connection;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public HttpEmbeddingModel(Api api, String baseUrl, String modelName, Config config) {
+        this(api, URI.create(baseUrl.endsWith("/") ? baseUrl : baseUrl + "/")
+                        .resolve(api == Api.OLLAMA ? "api/embed" : "embeddings"), modelName, config,
+                new Connection(config.concurrency()));
+    }
+
+    private HttpEmbeddingModel(Api api, URI endpoint, String modelName, Config config, Connection connection) {
+        this.api = api;
+        this.endpoint = endpoint;
+        this.modelName = modelName;
+        this.config = config;
+        this.connection = connection;
+    }
+
+    /**
+     * Create another instance for use by another thread, sharing the client and the limit of requests in flight.
+     */
+    public HttpEmbeddingModel copy() {
+        connection.users.incrementAndGet();
+        return new HttpEmbeddingModel(api, endpoint, modelName, config, connection);
+    }
+
+    /**
+     * Release the client, which is closed when all instances sharing it are closed.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            connection.release();
+        }
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        var texts = segments.stream().map(TextSegment::text).toList();
+        var requests = new ArrayList<Future<Result>>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < texts.size(); i += config.requestSize()) {
+                var part = texts.subList(i, Math.min(texts.size(), i + config.requestSize()));
+                requests.add(executor.submit(() -> send(part)));
+            }
+            // futures are in order of the texts, whatever order the responses came in
+            var embeddings = new ArrayList<Embedding>(texts.size());
+            int tokens = 0;
+            for (var request : requests) {
+                var result = request.get();
+                embeddings.addAll(result.embeddings());
+                tokens += result.tokens();
+            }
+            return Response.from(embeddings, new TokenUsage(tokens));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for embeddings", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Embedding request to %s failed".formatted(endpoint), e.getCause());
+        }
+    }
+
+    private Result send(List<String> texts) throws IOException, InterruptedException {
+        var input = Json.createArrayBuilder();
+        texts.forEach(input::add);
+        var body = Json.createObjectBuilder().add("model", modelName).add("input", input).build().toString();
+        var request = HttpRequest.newBuilder(endpoint).timeout(config.timeout())
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        for (int attempt = 0; ; attempt++) {
+            HttpResponse<String> response;
+            connection.inFlight.acquire();
+            try {
+                response = connection.client.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (IOException e) {
+                if (attempt == config.retries()) {
+                    throw e;
+                }
+                response = null;
+            } finally {
+                connection.inFlight.release();
+            }
+            if (response != null) {
+                if (response.statusCode() == 200) {
+                    return parse(response.body(), texts.size());
+                }
+                // other client errors won't go away by repeating the request
+                var retryable = response.statusCode() >= 500 || response.statusCode() == 429;
+                if (!retryable || attempt == config.retries()) {
+                    throw new IOException("HTTP %d from %s: %s".formatted(response.statusCode(), endpoint,
+                            response.body()));
+                }
+            }
+            var delay = config.backoff().toMillis() << attempt;
+            Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+        }
+    }
+
+    private Result parse(String body, int expected) throws IOException {
+        try (var reader = Json.createReader(new StringReader(body))) {
+            var json = reader.readObject();
+            var vectors = new float[expected][];
+            int tokens;
+            if (api == Api.OLLAMA) {
+                var embeddings = json.getJsonArray("embeddings");
+                for (int i = 0; i < embeddings.size() && i < expected; i++) {
+                    vectors[i] = toVector(embeddings.getJsonArray(i));
+                }
+                tokens = json.getInt("prompt_eval_count", 0);
+            } else {
+                // entries carry their index, and need not come in order
+                for (var item : json.getJsonArray("data").getValuesAs(JsonObject.class)) {
+                    var index = item.getInt("index");
+                    if (index >= 0 && index < expected) {
+                        vectors[index] = toVector(item.getJsonArray("embedding"));
+                    }
+                }
+                var usage = json.getJsonObject("usage");
+                tokens = usage == null ? 0 : usage.getInt("prompt_tokens", 0);
+            }
+            var result = new ArrayList<Embedding>(expected);
+            for (int i = 0; i < expected; i++) {
+                if (vectors[i] == null) {
+                    throw new IOException("Missing embedding %d of %d in response of %s".formatted(i, expected, endpoint));
+                }
+                result.add(new Embedding(vectors[i]));
+            }
+            return new Result(result, tokens);
+        } catch (RuntimeException e) {
+            throw new IOException("Unexpected response from " + endpoint, e);
+        }
+    }
+
+    private static float[] toVector(JsonArray array) {
+        var vector = new float[array.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) array.getJsonNumber(i).doubleValue();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,30 @@
+package io.zeromagic.logclustering.vector;
+
+final class ScalarKernel implements EmbeddingKernel {
+    static final ScalarKernel INSTANCE = new ScalarKernel();
+
+    private ScalarKernel() {
+    }
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        float result = 0;
+        for (int i = 0; i < a.length; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+
+    @Override
+    public void dot(float[] query, float[] matrix, int from, int to, float[] result) {
+        var dim = query.length;
+        for (int r = from; r < to; r++) {
+            float sum = 0;
+            var offset = r * dim;
+            for (int i = 0; i < dim; i++) {
+                sum += query[i] * matrix[offset + i];
+            }
+            result[r] = sum;
+        }
+    }
+}
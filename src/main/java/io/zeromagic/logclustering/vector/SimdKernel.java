@@ -0,0 +1,82 @@
+package io.zeromagic.logclustering.vector;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernel using Vector API. Must only be loaded when {@code jdk.incubator.vector} is present, see
+ * {@link EmbeddingKernel#INSTANCE}.
+ */
+final class SimdKernel implements EmbeddingKernel {
+    static final SimdKernel INSTANCE = new SimdKernel();
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private SimdKernel() {
+    }
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        var acc = FloatVector.zero(SPECIES);
+        var bound = SPECIES.loopBound(a.length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            acc = FloatVector.fromArray(SPECIES, a, i).fma(FloatVector.fromArray(SPECIES, b, i), acc);
+        }
+        var result = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+
+    @Override
+    public void dot(float[] query, float[] matrix, int from, int to, float[] result) {
+        var dim = query.length;
+        var bound = SPECIES.loopBound(dim);
+        int r = from;
+        // four rows at a time, so that every chunk of the query is loaded once for all of them
+        for (; r + 4 <= to; r += 4) {
+            int o0 = r * dim, o1 = o0 + dim, o2 = o1 + dim, o3 = o2 + dim;
+            var acc0 = FloatVector.zero(SPECIES);
+            var acc1 = FloatVector.zero(SPECIES);
+            var acc2 = FloatVector.zero(SPECIES);
+            var acc3 = FloatVector.zero(SPECIES);
+            int i = 0;
+            for (; i < bound; i += SPECIES.length()) {
+                var q = FloatVector.fromArray(SPECIES, query, i);
+                acc0 = q.fma(FloatVector.fromArray(SPECIES, matrix, o0 + i), acc0);
+                acc1 = q.fma(FloatVector.fromArray(SPECIES, matrix, o1 + i), acc1);
+                acc2 = q.fma(FloatVector.fromArray(SPECIES, matrix, o2 + i), acc2);
+                acc3 = q.fma(FloatVector.fromArray(SPECIES, matrix, o3 + i), acc3);
+            }
+            float r0 = acc0.reduceLanes(VectorOperators.ADD);
+            float r1 = acc1.reduceLanes(VectorOperators.ADD);
+            float r2 = acc2.reduceLanes(VectorOperators.ADD);
+            float r3 = acc3.reduceLanes(VectorOperators.ADD);
+            for (; i < dim; i++) {
+                r0 += query[i] * matrix[o0 + i];
+                r1 += query[i] * matrix[o1 + i];
+                r2 += query[i] * matrix[o2 + i];
+                r3 += query[i] * matrix[o3 + i];
+            }
+            result[r] = r0;
+            result[r + 1] = r1;
+            result[r + 2] = r2;
+            result[r + 3] = r3;
+        }
+        for (; r < to; r++) {
+            var offset = r * dim;
+            var acc = FloatVector.zero(SPECIES);
+            int i = 0;
+            for (; i < bound; i += SPECIES.length()) {
+                acc = FloatVector.fromArray(SPECIES, query, i).fma(FloatVector.fromArray(SPECIES, matrix, offset + i), acc);
+            }
+            var sum = acc.reduceLanes(VectorOperators.ADD);
+            for (; i < dim; i++) {
+                sum += query[i] * matrix[offset + i];
+            }
+            result[r] = sum;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package io.zeromagic.logclustering.vector;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.input.Tokenizer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects term ids of a single vector. Reused after {@link #reset()}, so that the only allocation per vector are the
+ * arrays of the vector itself. Not thread-safe.
+ * <p>
+ * A lookup accumulator doesn't add new terms to the dictionary. Terms it doesn't know get ids from the top of the
+ * int range instead, distinct within the vector, so they still count into its magnitude.
+ */
+final class TermAccumulator implements Tokenizer.TokenSink {
+    private final TermDictionary dictionary;
+    // terms not in the dictionary, when only looking up
+    private final Map<String, Integer> unknown;
+    private int[] ids = new int[256];
+    private int count;
+
+    TermAccumulator(TermDictionary dictionary) {
+        this(dictionary, false);
+    }
+
+    TermAccumulator(TermDictionary dictionary, boolean lookup) {
+        this.dictionary = dictionary;
+        this.unknown = lookup ? new HashMap<>() : null;
+    }
+
+    void add(String term) {
+        if (unknown == null) {
+            add(dictionary.id(term));
+        } else {
+            token(term, 0, term.length());
+        }
+    }
+
+    @Override
+    public void token(CharSequence text, int start, int end) {
+        if (unknown == null) {
+            add(dictionary.id(text, start, end));
+            return;
+        }
+        var id = dictionary.find(text, start, end);
+        if (id < 0) {
+            id = unknown.computeIfAbsent(text.subSequence(start, end).toString(),
+                    t -> Integer.MAX_VALUE - unknown.size());
+        }
+        add(id);
+    }
+
+    private void add(int id) {
+        if (count == ids.length) {
+            ids = Arrays.copyOf(ids, count * 2);
+        }
+        ids[count++] = id;
+    }
+
+    OptimizedTermVector build(LogEntry source) {
+        Arrays.sort(ids, 0, count);
+        // run length encode sorted ids
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                distinct++;
+            }
+        }
+        var vectorIds = new int[distinct];
+        var freqs = new int[distinct];
+        int j = -1;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                vectorIds[++j] = ids[i];
+            }
+            freqs[j]++;
+        }
+        return new OptimizedTermVector(vectorIds, freqs, source);
+    }
+
+    /**
+     * Forget terms collected so far, whether or not a vector was built of them
+     */
+    void reset() {
+        count = 0;
+        if (unknown != null) {
+            unknown.clear();
+        }
+    }
+}
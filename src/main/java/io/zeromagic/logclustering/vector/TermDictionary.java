@@ -0,0 +1,174 @@
+package io.zeromagic.logclustering.vector;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe mapping of terms to dense integer ids, assigned in order of first occurrence.
+ * <p>
+ * Terms can be looked up as a range of a {@link CharSequence}, so that known terms are resolved without allocating
+ * a string. Lookups are optimistic reads of an open addressing table, only adding a new term takes a lock.
+ */
+public final class TermDictionary {
+    /**
+     * Dictionary shared by all term vectors of the process
+     */
+    public static final TermDictionary SHARED = new TermDictionary();
+
+    private final StampedLock lock = new StampedLock();
+    // open addressing table of term -> id, replaced as a whole when growing
+    private String[] keys = new String[2048];
+    private int[] values = new int[2048];
+    private String[] terms = new String[1024];
+    private int size;
+
+    public int id(String term) {
+        return id(term, 0, term.length(), term.hashCode());
+    }
+
+    /**
+     * Id of term {@code text[start..end)}
+     */
+    public int id(CharSequence text, int start, int end) {
+        return id(text, start, end, hash(text, start, end));
+    }
+
+    private int id(CharSequence text, int start, int end, int hash) {
+        var stamp = lock.tryOptimisticRead();
+        String[] k = keys;
+        int[] v = values;
+        // arrays from different generations are only possible when the stamp is invalid as well
+        var id = k.length == v.length ? find(k, v, text, start, end, hash) : -1;
+        if (id >= 0 && lock.validate(stamp)) {
+            return id;
+        }
+        stamp = lock.writeLock();
+        try {
+            id = find(keys, values, text, start, end, hash);
+            if (id < 0) {
+                var term = text instanceof String s && start == 0 && end == s.length()
+                        ? s : text.subSequence(start, end).toString();
+                id = insert(term, hash);
+            }
+            return id;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Id of term {@code text[start..end)} if it is known, without adding it
+     * @return id of the term, or -1
+     */
+    public int find(CharSequence text, int start, int end) {
+        var hash = hash(text, start, end);
+        var stamp = lock.tryOptimisticRead();
+        String[] k = keys;
+        int[] v = values;
+        var id = k.length == v.length ? find(k, v, text, start, end, hash) : -1;
+        if (lock.validate(stamp)) {
+            return id;
+        }
+        stamp = lock.readLock();
+        try {
+            return find(keys, values, text, start, end, hash);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Same hash as of {@link String#hashCode()} of the range
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h;
+    }
+
+    private static int slot(int hash, int mask) {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static int find(String[] keys, int[] values, CharSequence text, int start, int end, int hash) {
+        var mask = keys.length - 1;
+        var length = end - start;
+        // bounded, as concurrent insert might be seen only partially
+        for (int i = slot(hash, mask), probes = 0; probes < keys.length; i = (i + 1) & mask, probes++) {
+            var key = keys[i];
+            if (key == null) {
+                return -1;
+            }
+            if (key.length() == length && key.hashCode() == hash && contentEquals(key, text, start)) {
+                return values[i];
+            }
+        }
+        return -1;
+    }
+
+    private static boolean contentEquals(String key, CharSequence text, int start) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int insert(String term, int hash) {
+        var id = size;
+        if (id == terms.length) {
+            terms = Arrays.copyOf(terms, id * 2);
+        }
+        terms[id] = term;
+        size = id + 1;
+        if (size * 2 > keys.length) {
+            var newKeys = new String[keys.length * 2];
+            var newValues = new int[keys.length * 2];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    put(newKeys, newValues, keys[i], keys[i].hashCode(), values[i]);
+                }
+            }
+            put(newKeys, newValues, term, hash, id);
+            values = newValues;
+            keys = newKeys;
+        } else {
+            put(keys, values, term, hash, id);
+        }
+        return id;
+    }
+
+    private static void put(String[] keys, int[] values, String term, int hash, int id) {
+        var mask = keys.length - 1;
+        var i = slot(hash, mask);
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        values[i] = id;
+        keys[i] = term;
+    }
+
+    public String term(int id) {
+        var stamp = lock.readLock();
+        try {
+            if (id >= size) {
+                throw new IllegalArgumentException("Unknown term id " + id);
+            }
+            return terms[id];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int size() {
+        var stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.naivecluster.Cluster;
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncEmbeddingOutputTest {
+    record Entry(String body, String exception, Map<String, String> metadata) implements LogEntry {}
+
+    static class Recording implements EmbeddingOutput {
+        final List<EmbeddingVector> written = new ArrayList<>();
+        final List<Integer> groups = new ArrayList<>();
+        int writtenBeforeClusters = -1;
+        boolean closed;
+
+        @Override
+        public void write(EmbeddingVector vector) {
+            written.add(vector);
+        }
+
+        @Override
+        public void writeAll(List<EmbeddingVector> vectors) throws IOException {
+            groups.add(vectors.size());
+            EmbeddingOutput.super.writeAll(vectors);
+        }
+
+        @Override
+        public void writeClusters(List<Cluster<EmbeddingVector>> clusters) {
+            writtenBeforeClusters = written.size();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    static List<EmbeddingVector> vectors(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new EmbeddingVector(new float[]{i}, new Entry("m" + i, null, Map.of()))).toList();
+    }
+
+    @Test
+    void writesEverythingInOrderBeforeClusters() throws IOException {
+        var target = new Recording();
+        var vectors = vectors(5000);
+        try (var out = new AsyncEmbeddingOutput(target, 64)) {
+            for (var v : vectors) {
+                out.write(v);
+            }
+            out.writeClusters(List.of());
+        }
+        assertThat(target.written).containsExactlyElementsOf(vectors);
+        assertThat(target.writtenBeforeClusters).isEqualTo(5000);
+        // taking the first vector of a group frees a slot for one more
+        assertThat(target.groups).allMatch(size -> size <= 64 + 1);
+        assertThat(target.closed).isTrue();
+    }
+
+    @Test
+    void reportsFailureOfWriter() {
+        var target = new Recording() {
+            @Override
+            public void write(EmbeddingVector vector) {
+                throw new IllegalStateException("disk full");
+            }
+        };
+        var out = new AsyncEmbeddingOutput(target, 4);
+        assertThatThrownBy(() -> {
+            for (var v : vectors(100)) {
+                out.write(v);
+            }
+            out.close();
+        }).isInstanceOf(IOException.class).hasRootCauseMessage("disk full");
+    }
+
+    @Test
+    void producersWaitingForSpaceFailWithWriter() throws Exception {
+        var producerCount = 8;
+        var target = new Recording() {
+            @Override
+            public void write(EmbeddingVector vector) {
+                // fail only after all producers are waiting for the single slot
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("disk full");
+            }
+        };
+        var out = new AsyncEmbeddingOutput(target, 1);
+        var executor = Executors.newFixedThreadPool(producerCount);
+        try {
+            var producers = new ArrayList<Future<?>>();
+            for (int t = 0; t < producerCount; t++) {
+                producers.add(executor.submit(() -> {
+                    for (var v : vectors(10)) {
+                        out.write(v);
+                    }
+                    return null;
+                }));
+            }
+            for (var producer : producers) {
+                assertThatThrownBy(() -> producer.get(10, TimeUnit.SECONDS))
+                        .isInstanceOf(ExecutionException.class).hasRootCauseMessage("disk full");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThatThrownBy(out::close).isInstanceOf(IOException.class);
+    }
+}
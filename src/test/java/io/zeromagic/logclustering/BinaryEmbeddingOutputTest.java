@@ -0,0 +1,79 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.naivecluster.Cluster;
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BinaryEmbeddingOutputTest {
+    record Entry(String body, String exception, Map<String, String> metadata) implements LogEntry {}
+
+    static EmbeddingVector vector(int i, String level, String exception) {
+        return new EmbeddingVector(new float[]{i, i + 0.5f}, new Entry("message é " + i, exception, Map.of(
+                LogEntry.MetadataKeys.LEVEL, level, LogEntry.MetadataKeys.LOGGER_NAME, "logger",
+                LogEntry.MetadataKeys.POD, "pod", LogEntry.MetadataKeys.TIMESTAMP, "t" + i, "EntryIndex", "" + i)));
+    }
+
+    static ByteBuffer read(Path file) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    void writesColumns(@TempDir Path dir) throws IOException {
+        var vectors = List.of(vector(0, "INFO", null), vector(1, "WARN", "boom"), vector(2, "INFO", null));
+        try (var out = new BinaryEmbeddingOutput(dir, true)) {
+            for (var v : vectors) {
+                out.write(v);
+            }
+            var first = Cluster.of(vectors.get(1));
+            var second = Cluster.of(vectors.get(0));
+            second.members().add(vectors.get(2));
+            out.writeClusters(List.of(first, second));
+        }
+
+        var floats = read(dir.resolve("vectors.f32")).asFloatBuffer();
+        assertThat(floats.limit()).isEqualTo(6);
+        assertThat(floats.get(2)).isEqualTo(1f);
+        assertThat(floats.get(5)).isEqualTo(2.5f);
+        var clusters = read(dir.resolve("cluster.i32")).asIntBuffer();
+        assertThat(new int[]{clusters.get(0), clusters.get(1), clusters.get(2)}).containsExactly(1, 0, 1);
+        var levels = read(dir.resolve("level.i32")).asIntBuffer();
+        assertThat(new int[]{levels.get(0), levels.get(1), levels.get(2)}).containsExactly(0, 1, 0);
+        assertThat(read(dir.resolve("entry_index.i32")).getInt(8)).isEqualTo(2);
+
+        var offsets = read(dir.resolve("message.offsets")).asLongBuffer();
+        var messages = Files.readAllBytes(dir.resolve("message.utf8"));
+        assertThat(new String(messages, (int) offsets.get(1), (int) (offsets.get(2) - offsets.get(1)),
+                StandardCharsets.UTF_8)).isEqualTo("message é 1");
+        var exceptionOffsets = read(dir.resolve("exception.offsets")).asLongBuffer();
+        assertThat(exceptionOffsets.limit()).isEqualTo(4);
+        assertThat(exceptionOffsets.get(3)).isEqualTo(4);
+
+        assertThat(Files.readString(dir.resolve("meta.json"))).isEqualTo("""
+                {"rows":3,"dimension":2,"dictionaries":{"level":["INFO","WARN"],"logger":["logger"],"pod":["pod"]}}""");
+    }
+
+    @Test
+    void skipsClusterColumnInSummary(@TempDir Path dir) throws IOException {
+        try (var out = new BinaryEmbeddingOutput(dir, false)) {
+            out.write(vector(0, "INFO", null));
+            out.write(vector(1, "WARN", null));
+            assertThatThrownBy(() -> out.writeClusters(List.of())).isInstanceOf(IllegalStateException.class);
+        }
+        assertThat(dir.resolve("cluster.i32")).doesNotExist();
+        assertThat(Files.readString(dir.resolve("meta.json"))).startsWith("{\"rows\":2,");
+    }
+}
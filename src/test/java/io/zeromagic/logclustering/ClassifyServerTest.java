@@ -0,0 +1,130 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.input.JsonArrayInputProducer;
+import io.zeromagic.logclustering.naivecluster.Cluster;
+import io.zeromagic.logclustering.vector.OptimizedTermVector;
+import io.zeromagic.logclustering.vector.TermDictionary;
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClassifyServerTest {
+    private final HttpClient client = HttpClient.newHttpClient();
+    private ClassifyServer<OptimizedTermVector> server;
+
+    @AfterEach
+    void stop() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    static String entry(String message, String logger) {
+        return Json.createObjectBuilder().add("LogMessage", message).add("Level", "INFO").add("LoggerName", logger)
+                .add("Name", "pod-1").add("Timestamp", "2024-01-01T00:00:00Z").add("Throwable", "").build().toString();
+    }
+
+    static String batch(String... entries) {
+        return Stream.of(entries).collect(Collectors.joining(",", "[", "]"));
+    }
+
+    static void snapshot(Path file, String... messages) throws IOException {
+        var entries = Stream.of(messages).map(m -> entry(m, "fish.payara.cloud.Pool")).toArray(String[]::new);
+        var leaders = JsonArrayInputProducer.readAll(new StringReader(batch(entries)), Function.identity()).stream()
+                .map(OptimizedTermVector::of).toList();
+        var statistics = leaders.stream().map(l -> {
+            var s = new Cluster.Statistics();
+            s.add(0);
+            return s;
+        }).toList();
+        new ClusterSnapshot<>("terms", TermVectorAdapter.INSTANCE.threshold(), leaders, statistics)
+                .write(file, ClusterSnapshot.TERMS, OptimizedTermVector::source);
+    }
+
+    HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    List<Integer> clusters(String body) throws IOException, InterruptedException {
+        var response = post("/classify", body);
+        assertThat(response.statusCode()).isEqualTo(200);
+        return Json.createReader(new StringReader(response.body())).readObject().getJsonArray("results")
+                .getValuesAs(JsonObject.class).stream().map(r -> r.getInt("cluster")).toList();
+    }
+
+    @Test
+    void classifiesAgainstSnapshotAndReloads(@TempDir Path dir) throws Exception {
+        var file = dir.resolve("clusters.snapshot");
+        snapshot(file, "Connection pool exhausted waiting", "Cache miss for key item");
+        server = ClassifyServer.start(TermVectorAdapter.INSTANCE, file, Function.identity(),
+                new ClassifyServer.Config(0, 50));
+
+        var terms = TermDictionary.SHARED.size();
+        var requests = batch(entry("Cache miss for key item", "fish.payara.cloud.Pool"),
+                entry("Connection pool exhausted waiting 12 ms", "fish.payara.cloud.Pool"),
+                entry("Unrelated zebraquux happened", "org.example.Other"));
+        assertThat(clusters(requests)).containsExactly(1, 0, -1);
+        // unknown terms of requests are not kept
+        assertThat(TermDictionary.SHARED.size()).isEqualTo(terms);
+
+        snapshot(file, "Cache miss for key item", "Connection pool exhausted waiting");
+        var reload = post("/reload", "");
+        assertThat(reload.body()).contains("\"generation\":2");
+        assertThat(clusters(requests)).containsExactly(0, 1, -1);
+
+        var stats = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + "/stats"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        var json = Json.createReader(new StringReader(stats.body())).readObject();
+        assertThat(json.getInt("requests")).isEqualTo(2);
+        assertThat(json.getInt("entries")).isEqualTo(6);
+        assertThat(json.getInt("p99TargetMillis")).isEqualTo(50);
+    }
+
+    @Test
+    void rejectsInvalidRequests(@TempDir Path dir) throws Exception {
+        var file = dir.resolve("clusters.snapshot");
+        snapshot(file, "Connection pool exhausted");
+        server = ClassifyServer.start(TermVectorAdapter.INSTANCE, file, Function.identity(),
+                new ClassifyServer.Config(0, 50));
+
+        assertThat(post("/classify", "[{\"LogMessage\": \"no level\"}]").statusCode()).isEqualTo(400);
+        assertThat(client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + "/classify"))
+                .build(), HttpResponse.BodyHandlers.discarding()).statusCode()).isEqualTo(405);
+    }
+
+    @Test
+    void reportsFailureAsServerError(@TempDir Path dir) throws Exception {
+        var file = dir.resolve("clusters.snapshot");
+        snapshot(file, "Connection pool exhausted");
+        Function<String, String> failingStemmer = trace -> {
+            throw new IllegalStateException("stemmer broke");
+        };
+        server = ClassifyServer.start(TermVectorAdapter.INSTANCE, file, failingStemmer, new ClassifyServer.Config(0, 50));
+
+        var failing = Json.createObjectBuilder().add("LogMessage", "boom").add("Level", "SEVERE")
+                .add("LoggerName", "fish.payara.cloud.Pool").add("Name", "pod-1")
+                .add("Timestamp", "2024-01-01T00:00:00Z")
+                .add("Throwable", "{\"Exception\": \"java.lang.Exception\", \"StackTrace\": \"at a.B.c(B.java:1)\"}")
+                .build().toString();
+        var response = post("/classify", batch(failing));
+        assertThat(response.statusCode()).isEqualTo(500);
+        assertThat(response.body()).contains("stemmer broke");
+    }
+}
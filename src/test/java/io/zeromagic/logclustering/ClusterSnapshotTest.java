@@ -0,0 +1,83 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.naivecluster.Cluster;
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+import io.zeromagic.logclustering.vector.OptimizedTermVector;
+import io.zeromagic.logclustering.vector.TermDictionary;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ClusterSnapshotTest {
+    record Entry(String body, String exception, Map<String, String> metadata) implements LogEntry {}
+
+    static Entry entry(String body, String exception) {
+        return new Entry(body, exception, Map.of(LogEntry.MetadataKeys.LEVEL, "INFO", "EntryIndex", "7"));
+    }
+
+    static Cluster.Statistics statistics(double... distances) {
+        var statistics = new Cluster.Statistics();
+        for (var d : distances) {
+            statistics.add(d);
+        }
+        statistics.timestamp("2024-01-01");
+        return statistics;
+    }
+
+    @Test
+    void termLeadersSurviveRoundTrip(@TempDir Path dir) throws IOException {
+        var file = dir.resolve("clusters.snapshot");
+        var leaders = List.of(OptimizedTermVector.of(entry("first leader", null)),
+                OptimizedTermVector.of(entry("second é leader", "java.lang.Exception: boom")));
+        var statistics = List.of(statistics(0, 0.2, 0.1), statistics(0));
+        new ClusterSnapshot<>("terms", 0.35, leaders, statistics).write(file, ClusterSnapshot.TERMS,
+                OptimizedTermVector::source);
+
+        var loaded = ClusterSnapshot.read(file, ClusterSnapshot.TERMS).check("terms", 0.35);
+
+        assertThat(loaded.leaders()).hasSize(2);
+        for (int i = 0; i < 2; i++) {
+            var leader = loaded.leaders().get(i);
+            assertThat(leader.cosineDistance(leaders.get(i))).isCloseTo(0, Offset.offset(1e-9));
+            assertThat(leader.ids()).isSorted();
+            for (int t = 0; t < leader.ids().length; t++) {
+                assertThat(TermDictionary.SHARED.term(leader.ids()[t])).isEqualTo(
+                        TermDictionary.SHARED.term(leaders.get(i).ids()[t]));
+            }
+            assertThat(leader.source().body()).isEqualTo(leaders.get(i).source().body());
+            assertThat(leader.source().exception()).isEqualTo(leaders.get(i).source().exception());
+            assertThat(leader.source().metadata()).containsExactly(Map.entry(LogEntry.MetadataKeys.LEVEL, "INFO"));
+            var stats = loaded.statistics().get(i).stats();
+            assertThat(stats.average()).isEqualTo(statistics.get(i).stats().average());
+            assertThat(stats.stdDev()).isCloseTo(statistics.get(i).stats().stdDev(), Offset.offset(1e-12));
+            assertThat(loaded.statistics().get(i).count()).isEqualTo(statistics.get(i).count());
+            assertThat(loaded.statistics().get(i).firstTimestamp()).isEqualTo("2024-01-01");
+        }
+    }
+
+    @Test
+    void embeddingsMustMatchModel(@TempDir Path dir) throws IOException {
+        var file = dir.resolve("clusters.snapshot");
+        var codec = ClusterSnapshot.embeddings("model", 3);
+        var leaders = List.of(new EmbeddingVector(new float[]{1, 2, 3}, entry("a", null)),
+                new EmbeddingVector(new float[]{4, 5, 6}, entry("b", null)));
+        new ClusterSnapshot<>("model", 0.1, leaders, List.of(statistics(0), statistics(0, 0.05)))
+                .write(file, codec, EmbeddingVector::entry);
+
+        var loaded = ClusterSnapshot.read(file, codec);
+        assertThat(loaded.leaders()).extracting(EmbeddingVector::vector).containsExactly(
+                new float[]{1, 2, 3}, new float[]{4, 5, 6});
+        assertThatThrownBy(() -> loaded.check("model", 0.2)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ClusterSnapshot.read(file, ClusterSnapshot.embeddings("model", 4)))
+                .hasMessageContaining("dimension 3");
+    }
+}
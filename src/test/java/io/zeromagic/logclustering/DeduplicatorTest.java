@@ -0,0 +1,54 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeduplicatorTest {
+    record Entry(String body, String exception, Map<String, String> metadata) implements LogEntry {}
+
+    static LogEntry entry(String body, String level, String pod, String timestamp) {
+        return new Entry(body, null, Map.of(LogEntry.MetadataKeys.LEVEL, level,
+                LogEntry.MetadataKeys.LOGGER_NAME, "logger", LogEntry.MetadataKeys.POD, pod,
+                LogEntry.MetadataKeys.TIMESTAMP, timestamp));
+    }
+
+    @Test
+    void ignoresPodAndTimestamp() {
+        var dedup = new Deduplicator<String>(10);
+        var first = dedup.lookup(entry("started", "INFO", "pod-1", "t1"));
+        var repeated = dedup.lookup(entry("started", "INFO", "pod-2", "t2"));
+        var otherLevel = dedup.lookup(entry("started", "WARN", "pod-1", "t1"));
+
+        assertThat(first.first()).isTrue();
+        assertThat(repeated.first()).isFalse();
+        assertThat(repeated.slot()).isSameAs(first.slot());
+        assertThat(otherLevel.first()).isTrue();
+        assertThat(dedup.hits()).isEqualTo(1);
+        assertThat(dedup.misses()).isEqualTo(2);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        var dedup = new Deduplicator<String>(2);
+        dedup.lookup(entry("a", "INFO", "p", "t"));
+        dedup.lookup(entry("b", "INFO", "p", "t"));
+        dedup.lookup(entry("a", "INFO", "p", "t"));
+        dedup.lookup(entry("c", "INFO", "p", "t"));
+
+        assertThat(dedup.evictions()).isEqualTo(1);
+        assertThat(dedup.lookup(entry("a", "INFO", "p", "t")).first()).isFalse();
+        assertThat(dedup.lookup(entry("b", "INFO", "p", "t")).first()).isTrue();
+    }
+
+    @Test
+    void fieldBoundariesAffectHash() {
+        var a = new Entry("ab", "c", Map.of());
+        var b = new Entry("a", "bc", Map.of());
+
+        assertThat(Deduplicator.hash(a)).isNotEqualTo(Deduplicator.hash(b));
+    }
+}
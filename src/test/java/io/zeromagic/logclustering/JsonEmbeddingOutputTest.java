@@ -0,0 +1,72 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JsonEmbeddingOutputTest {
+    record Entry(String body, String exception, Map<String, String> metadata) implements LogEntry {}
+
+    static EmbeddingVector vector(int i) {
+        return new EmbeddingVector(new float[]{i, 0.5f}, new Entry("message " + i, null,
+                Map.of(LogEntry.MetadataKeys.LEVEL, "INFO", LogEntry.MetadataKeys.TIMESTAMP, "t" + i)));
+    }
+
+    static class CountingWriter extends StringWriter {
+        int flushes;
+        boolean closed;
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    void neverFlushesBetweenEntries() throws IOException {
+        var target = new CountingWriter();
+        var out = new JsonEmbeddingOutput(target);
+        for (int i = 0; i < 100; i++) {
+            out.write(vector(i));
+        }
+        assertThat(target.flushes).isZero();
+        out.close();
+        assertThat(target.closed).isTrue();
+        assertThat(target.toString().lines()).hasSize(101);
+        assertThat(target.toString()).contains("\"Message\":\"message 99\"");
+    }
+
+    @Test
+    void reportsFailureOfWriter() {
+        var out = new JsonEmbeddingOutput(new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        assertThatThrownBy(() -> out.write(vector(0)))
+                .isInstanceOfAny(IOException.class, UncheckedIOException.class).hasRootCauseMessage("disk full");
+    }
+}
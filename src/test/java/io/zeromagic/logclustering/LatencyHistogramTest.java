@@ -0,0 +1,34 @@
+package io.zeromagic.logclustering;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencyHistogramTest {
+    @Test
+    void bucketsCoverValuesWithinEighth() {
+        for (long value : new long[]{0, 7, 8, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE}) {
+            var bucket = LatencyHistogram.bucket(value);
+            assertThat(LatencyHistogram.upperBound(bucket)).isGreaterThanOrEqualTo(value);
+            assertThat(LatencyHistogram.upperBound(bucket) - value).isLessThanOrEqualTo(value / 8);
+            if (bucket > 0) {
+                assertThat(LatencyHistogram.upperBound(bucket - 1)).isLessThan(value);
+            }
+        }
+    }
+
+    @Test
+    void percentilesOfBothHistograms() {
+        var first = new LatencyHistogram();
+        var second = new LatencyHistogram();
+        for (int i = 1; i <= 99; i++) {
+            first.record(1_000_000);
+        }
+        second.record(100_000_000);
+        var sum = first.plus(second);
+        assertThat(sum.count()).isEqualTo(100);
+        assertThat(sum.percentile(99)).isBetween(1_000_000L, 1_125_000L);
+        assertThat(sum.percentile(100)).isBetween(100_000_000L, 112_500_000L);
+        assertThat(new LatencyHistogram().percentile(99)).isZero();
+    }
+}
@@ -0,0 +1,61 @@
+package io.zeromagic.logclustering;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBudgetBatcherTest {
+    record Entry(String body, String exception, Map<String, String> metadata) implements LogEntry {}
+
+    static List<LogEntry> window(int size) {
+        var rand = new Random(size);
+        var result = new ArrayList<LogEntry>();
+        for (int i = 0; i < size; i++) {
+            var trace = rand.nextInt(4) == 0 ? "\tat x.Y.z(Y.java:1)\n".repeat(rand.nextInt(200)) : null;
+            result.add(new Entry("message " + "x".repeat(rand.nextInt(100)), trace, Map.of()));
+        }
+        return result;
+    }
+
+    @Test
+    void splitsWithinBudget() {
+        var window = window(1000);
+        var batcher = new TokenBudgetBatcher(new TokenBudgetBatcher.Config(2048, 1000));
+
+        var batches = batcher.split(window);
+
+        var indexes = batches.stream().flatMapToInt(b -> Arrays.stream(b.indexes())).sorted().toArray();
+        assertThat(indexes).hasSize(1000).isSorted().doesNotHaveDuplicates();
+        for (var batch : batches) {
+            var longest = Arrays.stream(batch.indexes())
+                    .map(i -> TokenBudgetBatcher.estimateTokens(window.get(i))).max().orElseThrow();
+            assertThat(batch.paddedTokens()).isEqualTo(longest * batch.indexes().length).isLessThanOrEqualTo(2048);
+        }
+        // short messages share batches, stack traces are cut at the length limit
+        assertThat(batches.get(0).indexes().length).isGreaterThan(20);
+        assertThat(batches.get(batches.size() - 2).indexes().length).isEqualTo(4);
+    }
+
+    @Test
+    void adaptsToLatency() {
+        var batcher = new TokenBudgetBatcher(new TokenBudgetBatcher.Config(2048, 1000));
+        var full = new TokenBudgetBatcher.Batch(new int[0], 2048);
+
+        batcher.record(full, 250_000_000L);
+        assertThat(batcher.budget()).isGreaterThan(2048);
+
+        var grown = batcher.budget();
+        batcher.record(new TokenBudgetBatcher.Batch(new int[0], 100), 10_000_000_000L);
+        assertThat(batcher.budget()).as("small batch is ignored").isEqualTo(grown);
+
+        batcher.record(new TokenBudgetBatcher.Batch(new int[0], grown), 10_000_000_000L);
+        assertThat(batcher.budget()).isLessThan(grown);
+    }
+}
@@ -0,0 +1,99 @@
+package io.zeromagic.logclustering.input;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JsonArrayInputProducerTest {
+    static final String EXPORT = """
+            [
+              {"TenantId": "t", "Timestamp": "2023-01-01T00:00:00Z", "Level": "INFO", "LoggerName": "fish.payara.A",
+               "Name": "pod-1", "LogMessage": "Request done", "Throwable": "", "Nested": {"a": [1, {"b": "c"}]}},
+              {"Timestamp": "2023-01-01T00:00:01Z", "Level": "SEVERE", "LoggerName": "fish.payara.B", "Name": "pod-2",
+               "LogMessage": "None", "Count": 5, "Tags": ["x", "y"],
+               "Throwable": "{\\"Exception\\": \\"java.lang.IllegalStateException\\", \\"Other\\": {\\"x\\": 1}, \\"StackTrace\\": \\"boom\\\\n  at a.B\\"}"}
+            ]
+            """;
+
+    static List<LogEntry> read(Path file) throws IOException {
+        return read(new JsonArrayInputProducer(file, s -> s.toUpperCase()));
+    }
+
+    static List<LogEntry> read(InputProducer producer) throws IOException {
+        var result = new ArrayList<LogEntry>();
+        var count = producer.produceTo(result::add);
+        assertThat(count).isEqualTo(result.size());
+        return result;
+    }
+
+    @Test
+    void extractsKnownFields(@TempDir Path dir) throws IOException {
+        var file = dir.resolve("export.json");
+        Files.writeString(file, EXPORT);
+
+        var entries = read(file);
+
+        assertThat(entries).hasSize(2);
+        assertThat(entries.get(0).body()).isEqualTo("Request done");
+        assertThat(entries.get(0).exception()).isNull();
+        assertThat(entries.get(0).metadata()).isEqualTo(Map.of("Level", "INFO", "LoggerName", "fish.payara.A",
+                "Pod", "pod-1", "Timestamp", "2023-01-01T00:00:00Z", "EntryIndex", "0"));
+        // placeholder message is replaced by exception, stack trace goes through the stemmer
+        assertThat(entries.get(1).body()).isEqualTo("java.lang.IllegalStateException");
+        assertThat(entries.get(1).exception()).isEqualTo("BOOM\n  AT A.B");
+        assertThat(entries.get(1).metadata()).containsEntry("EntryIndex", "1").containsEntry("Pod", "pod-2");
+    }
+
+    @Test
+    void failsOnMissingField(@TempDir Path dir) throws IOException {
+        var file = dir.resolve("export.json");
+        Files.writeString(file, """
+                [{"Timestamp": "t", "Level": "INFO", "LoggerName": "l", "LogMessage": "m", "Throwable": ""}]""");
+
+        assertThatThrownBy(() -> read(file)).isInstanceOf(IOException.class)
+                .hasRootCauseMessage("Entry 0 has no string field Name");
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1,7", "100,64", "4096,1000", "1048576,67108864"})
+    void mappedProducesSameEntries(int chunkSize, int windowSize, @TempDir Path dir) throws IOException {
+        var rand = new Random(chunkSize);
+        var json = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) {
+            if (i > 0) {
+                json.append(rand.nextInt(10) == 0 ? " ,\n" : ",");
+            }
+            var throwable = rand.nextBoolean() ? "" : """
+                    {\\"Exception\\": \\"E%d\\", \\"StackTrace\\": \\"trace {[\\\\\\"%d\\"}""".formatted(i, i);
+            json.append("""
+                    {"Level": "INFO", "Tricky": "} ] { \\" [", "LoggerName": "l%d", "Name": "p", "Nested": [{"a": "}"}],
+                     "Timestamp": "t%d", "LogMessage": "%s", "Throwable": "%s"}"""
+                    .formatted(i % 7, i, rand.nextBoolean() ? "None" : "message \\u00e9 " + i, throwable));
+        }
+        json.append("]");
+        var file = dir.resolve("export.json");
+        Files.writeString(file, json);
+
+        var expected = read(file);
+        var actual = read(new MappedJsonArrayInputProducer(file, s -> s.toUpperCase(), 3, chunkSize, windowSize));
+
+        assertThat(actual).hasSameSizeAs(expected);
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).body()).isEqualTo(expected.get(i).body());
+            assertThat(actual.get(i).exception()).isEqualTo(expected.get(i).exception());
+            assertThat(actual.get(i).metadata()).isEqualTo(expected.get(i).metadata());
+        }
+    }
+}
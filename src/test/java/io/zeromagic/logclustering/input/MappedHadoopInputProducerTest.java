@@ -0,0 +1,92 @@
+package io.zeromagic.logclustering.input;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedHadoopInputProducerTest {
+    private static final Pattern TIMESTAMP_PATTERN = Pattern.compile(
+            "^(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3})\\s+(\\w+)\\s+\\[(.*?)\\]\\s+(\\S+):\\s+(.*)$");
+
+    private static final String[] LINES = {
+            "2015-10-18 18:01:47,978 INFO [main] org.apache.hadoop.mapreduce.v2.app.MRAppMaster: Created MRAppMaster",
+            "2015-10-18 18:01:48,001 WARN  [RMCommunicator Allocator] org.apache.hadoop.ipc.Client: Retrying connect",
+            "2015-10-18 18:01:48,001 ERROR\t[a]b] c]: d x: body with ] and : inside",
+            "2015-10-18 18:01:48,001 INFO [main] Logger:no space after colon",
+            "2015-10-18 18:01:48,001 INFO [main] : colon only",
+            "2015-10-18 18:01:48,001 INFO [main] org.Foo: ",
+            "2015-10-18 18:01:48,001 INFO [main] org.Foo:",
+            "2015-10-18 18:01:48,001 INFO[main] org.Foo: no space before thread",
+            "2015-10-18 18:01:48,001 INFO [ma in] org.Foo: separator in thread",
+            "2015-10-18 18:01:48,001 INFO [main] org.Foo: separator \u0085 in body",
+            "2015-10-18 18:01:48,001 INFO [main] org.Foo: unicode body é ✓",
+            "2015-10-18 18:01:48,001 I-NFO [main] org.Foo: bad level",
+            "2015-1O-18 18:01:48,001 INFO [main] org.Foo: bad timestamp",
+            "2015-10-18 18:01:48,001",
+            "java.net.ConnectException: Connection refused",
+            "\tat sun.nio.ch.SocketChannelImpl.checkConnect(Native Method)",
+            "   ",
+            "",
+            " ",
+    };
+    private static final String[] TERMINATORS = {"\n", "\n", "\n", "\r\n", "\r"};
+
+    @Test
+    void scannerMatchesPattern() {
+        var scanner = new HadoopLineScanner();
+        for (var line : LINES) {
+            var bytes = line.getBytes(StandardCharsets.UTF_8);
+            var matcher = TIMESTAMP_PATTERN.matcher(line);
+            var matches = scanner.matches(bytes, 0, bytes.length);
+            assertThat(matches).as(line).isEqualTo(matcher.matches());
+            if (matches) {
+                assertThat(string(bytes, scanner.levelStart, scanner.levelEnd)).isEqualTo(matcher.group(2));
+                assertThat(string(bytes, scanner.loggerStart, scanner.loggerEnd)).isEqualTo(matcher.group(4));
+                assertThat(string(bytes, scanner.bodyStart, bytes.length)).isEqualTo(matcher.group(5));
+            }
+        }
+    }
+
+    private static String string(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 50, 4096, 1 << 20})
+    void producesSameEntriesAsSequentialReader(int chunkSize, @TempDir Path dir) throws IOException {
+        var rand = new Random(chunkSize);
+        for (int f = 0; f < 3; f++) {
+            var content = new StringBuilder();
+            for (int i = 0; i < 2000; i++) {
+                content.append(LINES[rand.nextInt(LINES.length)]);
+                if (i < 1999 || f != 1) {
+                    content.append(TERMINATORS[rand.nextInt(TERMINATORS.length)]);
+                }
+            }
+            Files.writeString(dir.resolve("container_%d.log".formatted(f)), content);
+        }
+
+        var expected = collect(new HadoopInputProducer(dir));
+        assertThat(expected).isNotEmpty();
+        assertThat(collect(new MappedHadoopInputProducer(dir, 3, chunkSize))).containsExactlyElementsOf(expected);
+    }
+
+    private static List<String> collect(InputProducer producer) throws IOException {
+        var result = new ArrayList<String>();
+        var count = producer.produceTo(entry -> result.add(entry.metadata() + "|" + entry.body() + "|" + entry.exception()));
+        assertThat(count).isEqualTo(result.size());
+        return result;
+    }
+}
@@ -0,0 +1,61 @@
+package io.zeromagic.logclustering.input;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StackTraceStemmerTest {
+    private static final List<String> PACKAGES = List.of("fish.payara.cloud", "fish.payara.micro", "com.acme");
+    private static final Pattern REGEX = Pattern.compile("\\n\\s+at (?!" + String.join("|",
+            PACKAGES.stream().map(Pattern::quote).toList()) + ").+");
+    private static final String[] PARTS = {"\n", "\n", " ", "\t", "\r", "at ", "at ", "fish.payara.cloud.A.b(A.java:1)",
+            "fish.payara.micro", "fish.payara", "com.acme.X", "org.glassfish.Y.z(Y.java:2)", " ", "x"};
+
+    @Test
+    void stemsFrameLines() {
+        var stemmer = new StackTraceStemmer(PACKAGES, 0);
+        var trace = """
+                java.lang.IllegalStateException: boom
+                    at org.glassfish.Foo.bar(Foo.java:10)
+                    at fish.payara.cloud.Service.call(Service.java:20)
+
+                    at java.base/java.lang.Thread.run(Thread.java:1583)
+                Caused by: java.io.IOException
+                    at com.acme.Client.send(Client.java:5)""";
+
+        assertThat(stemmer.stem(trace)).isEqualTo("""
+                java.lang.IllegalStateException: boom
+                    at fish.payara.cloud.Service.call(Service.java:20)
+                Caused by: java.io.IOException
+                    at com.acme.Client.send(Client.java:5)""");
+    }
+
+    @Test
+    void matchesRegexOnRandomText() {
+        var stemmer = new StackTraceStemmer(PACKAGES, 0);
+        var rand = new Random(13);
+        for (int i = 0; i < 20000; i++) {
+            var text = new StringBuilder();
+            for (int j = rand.nextInt(16); j > 0; j--) {
+                text.append(PARTS[rand.nextInt(PARTS.length)]);
+            }
+            var s = text.toString();
+            assertThat(stemmer.stem(s)).as(s).isEqualTo(REGEX.matcher(s).replaceAll(""));
+        }
+    }
+
+    @Test
+    void cachesByTrace() {
+        var stemmer = new StackTraceStemmer(PACKAGES, 4);
+        var trace = "E\n  at org.X.y(X.java:1)";
+        var first = stemmer.apply(trace);
+
+        assertThat(first).isEqualTo("E");
+        assertThat(stemmer.apply(new String(trace))).isSameAs(first);
+        assertThat(stemmer.apply("F\n  at org.X.y(X.java:1)")).isEqualTo("F");
+    }
+}
@@ -0,0 +1,67 @@
+package io.zeromagic.logclustering.input;
+
+import io.zeromagic.logclustering.vector.OptimizedTermVector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenizerTest {
+    static List<String> scan(String text) {
+        var result = new ArrayList<String>();
+        Tokenizer.scan(text, (t, start, end) -> result.add(t.subSequence(start, end).toString()));
+        return result;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", " ", "  ", "a", "a b", " a", "a ", "  a  b ", "é a", "a_b1-c",
+            "java.io.IOException: boom\n\tat org.apache.hadoop.X.y(X.java:1)"})
+    void scanMatchesSplit(String text) {
+        assertThat(scan(text)).containsExactlyElementsOf(Tokenizer.SIMPLE.tokenize(text));
+    }
+
+    @Test
+    void scanMatchesSplitOnRandomText() {
+        var rand = new Random(3);
+        var alphabet = "ab_9 .:-\n\té";
+        for (int i = 0; i < 10000; i++) {
+            var text = new StringBuilder();
+            for (int j = rand.nextInt(12); j > 0; j--) {
+                text.append(alphabet.charAt(rand.nextInt(alphabet.length())));
+            }
+            assertThat(scan(text.toString())).containsExactlyElementsOf(Tokenizer.SIMPLE.tokenize(text.toString()));
+        }
+    }
+
+    @Test
+    void streamingVectorMatchesSimpleTokenizer() {
+        LogEntry entry = new LogEntry() {
+            @Override
+            public String body() {
+                return "Retrying connect to server: node1/10.0.0.1:8030. Already tried 3 time(s)";
+            }
+
+            @Override
+            public String exception() {
+                return "java.io.IOException: boom\n\tat org.apache.hadoop.X.y(X.java:1)";
+            }
+
+            @Override
+            public Map<String, String> metadata() {
+                return Map.of(LogEntry.MetadataKeys.LEVEL, "INFO",
+                        LogEntry.MetadataKeys.POD, "container_1.log",
+                        LogEntry.MetadataKeys.TIMESTAMP, "2015-10-18 18:01:47,978");
+            }
+        };
+        var expected = OptimizedTermVector.of(entry, Tokenizer.SIMPLE);
+        var actual = OptimizedTermVector.of(entry);
+        assertThat(actual.ids()).containsExactly(expected.ids());
+        assertThat(actual.freqs()).containsExactly(expected.freqs());
+    }
+}
@@ -0,0 +1,52 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import io.zeromagic.logclustering.vector.OptimizedTermVector;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+import static io.zeromagic.logclustering.naivecluster.InvertedTermIndexTest.corpus;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClusterTest {
+    private static final double THRESHOLD = 0.35;
+    private static final Metric<OptimizedTermVector> METRIC = OptimizedTermVector::cosineDistance;
+    private static final Offset<Double> PRECISION = Offset.offset(1e-9);
+
+    @Test
+    void runningStatisticsMatchExactOnes() {
+        var clustering = new NaiveClustering<>(METRIC, THRESHOLD);
+        corpus(2000, 5).forEach(clustering::add);
+        for (var cluster : clustering.getClusters()) {
+            var running = cluster.statistics().stats();
+            var exact = cluster.distributionStats(METRIC);
+            assertThat(cluster.statistics().count()).isEqualTo(cluster.members().size());
+            assertThat(running.average()).isCloseTo(exact.average(), PRECISION);
+            assertThat(running.stdDev()).isCloseTo(exact.stdDev(), PRECISION);
+            assertThat(running.max()).isCloseTo(exact.max(), PRECISION);
+        }
+    }
+
+    @Test
+    void mergeCombinesStatistics() {
+        var first = Cluster.of("a");
+        first.add("b", 0.2);
+        first.statistics().timestamp("2024-01-02");
+        var second = Cluster.of("c");
+        second.add("d", 0.4);
+        second.add("e", 0.6);
+        second.statistics().timestamp("2024-01-01");
+        second.statistics().timestamp("2024-01-03");
+
+        first.merge(second);
+
+        var stats = first.statistics().stats();
+        assertThat(first.members()).containsExactly("a", "b", "c", "d", "e");
+        assertThat(first.statistics().count()).isEqualTo(5);
+        assertThat(stats.average()).isCloseTo(0.24, PRECISION);
+        // population deviation of 0, 0.2, 0, 0.4, 0.6
+        assertThat(stats.stdDev()).isCloseTo(Math.sqrt(0.0544), PRECISION);
+        assertThat(stats.max()).isEqualTo(0.6);
+        assertThat(first.statistics().firstTimestamp()).isEqualTo("2024-01-01");
+        assertThat(first.statistics().lastTimestamp()).isEqualTo("2024-01-03");
+    }
+}
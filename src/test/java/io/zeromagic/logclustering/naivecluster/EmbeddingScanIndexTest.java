@@ -0,0 +1,33 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static io.zeromagic.logclustering.naivecluster.HnswIndexTest.randomVector;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class EmbeddingScanIndexTest {
+    @Test
+    void matchesPerVectorCosineDistance() {
+        var rand = new Random(11);
+        var exact = new LinearScanIndex<EmbeddingVector>(EmbeddingVector::cosineDistance);
+        var matrix = new EmbeddingScanIndex();
+        // more than one parallel block
+        for (int i = 0; i < 5000; i++) {
+            var cluster = Cluster.of(randomVector(rand, 48));
+            exact.add(cluster);
+            matrix.add(cluster);
+        }
+        for (int i = 0; i < 200; i++) {
+            var query = randomVector(rand, 48);
+            var expected = exact.findMatch(query, 2).orElseThrow();
+            var actual = matrix.findMatch(query, 2).orElseThrow();
+            assertThat(actual.cluster()).isSameAs(expected.cluster());
+            assertThat(actual.distance()).isCloseTo(expected.distance(), within(1e-5));
+        }
+        assertThat(matrix.findMatch(randomVector(rand, 48), 0.01)).isEmpty();
+    }
+}
@@ -0,0 +1,58 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswIndexTest {
+    static EmbeddingVector randomVector(Random rand, int dim) {
+        var v = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            v[i] = (float) rand.nextGaussian();
+        }
+        return new EmbeddingVector(v, null);
+    }
+
+    @Test
+    void findsClosestLeaderMostOfTheTime() {
+        var rand = new Random(7);
+        Metric<EmbeddingVector> metric = EmbeddingVector::cosineDistance;
+        var exact = new LinearScanIndex<>(metric);
+        var approximate = new HnswIndex<>(metric, HnswIndex.Config.DEFAULT);
+        for (int i = 0; i < 5000; i++) {
+            var cluster = Cluster.of(randomVector(rand, 32));
+            exact.add(cluster);
+            approximate.add(cluster);
+        }
+        int queries = 500;
+        int hits = 0;
+        for (int i = 0; i < queries; i++) {
+            var query = randomVector(rand, 32);
+            var expected = exact.findMatch(query, 2).orElseThrow();
+            var actual = approximate.findMatch(query, 2).orElseThrow();
+            if (actual.cluster() == expected.cluster()) {
+                hits++;
+            }
+            assertThat(actual.distance()).isGreaterThanOrEqualTo(expected.distance());
+        }
+        assertThat(hits).isGreaterThan(queries * 9 / 10);
+    }
+
+    @Test
+    void respectsThreshold() {
+        var rand = new Random(7);
+        var index = new HnswIndex<EmbeddingVector>(EmbeddingVector::cosineDistance, new HnswIndex.Config(4, 16, 16));
+        assertThat(index.findMatch(randomVector(rand, 8), 2)).isEmpty();
+        var leader = randomVector(rand, 8);
+        index.add(Cluster.of(leader));
+        assertThat(index.findMatch(leader, 0.01)).isPresent();
+        var opposite = leader.vector().clone();
+        for (int i = 0; i < opposite.length; i++) {
+            opposite[i] = -opposite[i];
+        }
+        assertThat(index.findMatch(new EmbeddingVector(opposite, null), 1)).isEmpty();
+    }
+}
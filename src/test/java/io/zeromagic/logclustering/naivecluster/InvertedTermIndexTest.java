@@ -0,0 +1,66 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.input.Tokenizer;
+import io.zeromagic.logclustering.vector.OptimizedTermVector;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InvertedTermIndexTest {
+    private static final String[] TEMPLATES = {
+            "Failed to connect to %s after %d retries",
+            "Adding to DB to ignore usage of %s",
+            "Request %s completed in %d ms",
+            "Session %s expired, %d entries removed",
+            "Unable to process message %s from queue %d",
+            "Heartbeat from %s",
+    };
+    private static final String[] LEVELS = {"INFO", "WARNING", "SEVERE"};
+
+    record Entry(String body, String exception, Map<String, String> metadata) implements LogEntry {}
+
+    static List<OptimizedTermVector> corpus(int size, long seed) {
+        var rand = new Random(seed);
+        var result = new ArrayList<OptimizedTermVector>();
+        for (int i = 0; i < size; i++) {
+            var template = TEMPLATES[rand.nextInt(TEMPLATES.length)];
+            // random tokens make some entries drift away from the template's cluster
+            var body = template.formatted("node" + rand.nextInt(50) + " " + "x".repeat(rand.nextInt(3)) + rand.nextInt(4),
+                    rand.nextInt(1000));
+            var exception = rand.nextInt(5) == 0 ? "java.io.IOException: broken pipe\n\tat com.example.Foo.bar(Foo.java:" + rand.nextInt(100) + ")" : null;
+            var entry = new Entry(body, exception, Map.of(
+                    LogEntry.MetadataKeys.LEVEL, LEVELS[rand.nextInt(LEVELS.length)],
+                    LogEntry.MetadataKeys.LOGGER_NAME, "com.example.Logger" + rand.nextInt(4),
+                    LogEntry.MetadataKeys.POD, "pod-" + rand.nextInt(3),
+                    LogEntry.MetadataKeys.TIMESTAMP, "2024-09-24T07:00:0" + rand.nextInt(10)));
+            result.add(OptimizedTermVector.of(entry, Tokenizer.SIMPLE));
+        }
+        return result;
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = {0.05, 0.2, 0.35, 0.6, 1.0})
+    void assignmentsMatchBruteForce(double threshold) {
+        var vectors = corpus(3000, 42);
+        Metric<OptimizedTermVector> metric = OptimizedTermVector::cosineDistance;
+        var bruteForce = new NaiveClustering<>(metric, threshold);
+        var indexed = new NaiveClustering<>(metric, threshold, new InvertedTermIndex());
+        vectors.forEach(bruteForce::add);
+        vectors.forEach(indexed::add);
+
+        var expected = bruteForce.getClusters();
+        var actual = indexed.getClusters();
+        assertThat(actual).hasSameSizeAs(expected);
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).leader()).isSameAs(expected.get(i).leader());
+            assertThat(actual.get(i).members()).containsExactlyElementsOf(expected.get(i).members());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemberListTest {
+    @Test
+    void keepsOrderAcrossChunks() {
+        var list = new MemberList<>(0);
+        for (int i = 1; i < 1000; i++) {
+            list.add(i);
+        }
+        assertThat(list).hasSize(1000);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(list.get(i)).isEqualTo(i);
+        }
+        assertThat(list).containsExactlyElementsOf(IntStream.range(0, 1000).boxed().toList());
+        assertThatThrownBy(() -> list.get(1000)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void iteratesSnapshot() {
+        var list = new MemberList<>(0);
+        list.addAll(List.of(1, 2));
+        var seen = new ArrayList<Integer>();
+        for (var member : list) {
+            seen.add(member);
+            list.add(member + 10);
+        }
+        assertThat(seen).containsExactly(0, 1, 2);
+        assertThat(list).containsExactly(0, 1, 2, 10, 11, 12);
+    }
+
+    @Test
+    void appendsConcurrently() throws Exception {
+        var list = new MemberList<>(-1);
+        try (var executor = Executors.newFixedThreadPool(4)) {
+            var tasks = IntStream.range(0, 4).mapToObj(t -> executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    list.add(t * 10_000 + i);
+                    // readers never see a hole
+                    assertThat(list.get(list.size() - 1)).isNotNull();
+                }
+            })).toList();
+            for (var task : tasks) {
+                task.get();
+            }
+        }
+        assertThat(list).hasSize(40_001);
+        assertThat(list.stream().sorted().toList())
+                .isEqualTo(IntStream.range(-1, 40_000).boxed().toList());
+    }
+}
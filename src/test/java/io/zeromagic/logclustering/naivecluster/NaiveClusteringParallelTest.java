@@ -0,0 +1,99 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import io.zeromagic.logclustering.vector.EmbeddingVector;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.zeromagic.logclustering.naivecluster.HnswIndexTest.randomVector;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NaiveClusteringParallelTest {
+    static final double THRESHOLD = 0.1;
+    static final Metric<EmbeddingVector> METRIC = EmbeddingVector::cosineDistance;
+
+    /**
+     * Members scattered around random centers, so that the expected clustering doesn't depend on order.
+     */
+    static List<EmbeddingVector> separatedCorpus(int centers, int size, long seed) {
+        var rand = new Random(seed);
+        var centerVectors = new ArrayList<EmbeddingVector>();
+        for (int i = 0; i < centers; i++) {
+            centerVectors.add(randomVector(rand, 64));
+        }
+        var result = new ArrayList<EmbeddingVector>();
+        for (int i = 0; i < size; i++) {
+            var center = centerVectors.get(rand.nextInt(centers)).vector();
+            var v = new float[center.length];
+            for (int j = 0; j < v.length; j++) {
+                v[j] = center[j] + (float) rand.nextGaussian() * 0.05f;
+            }
+            result.add(new EmbeddingVector(v, null));
+        }
+        return result;
+    }
+
+    static void addConcurrently(Clustering<EmbeddingVector> clustering, List<EmbeddingVector> vectors, int threads) throws Exception {
+        var next = new AtomicInteger();
+        try (var executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                executor.submit(() -> {
+                    for (int i; (i = next.getAndIncrement()) < vectors.size(); ) {
+                        clustering.add(vectors.get(i));
+                    }
+                });
+            }
+        }
+    }
+
+    static Set<Set<EmbeddingVector>> partition(List<Cluster<EmbeddingVector>> clusters) {
+        var result = new HashSet<Set<EmbeddingVector>>();
+        for (var cluster : clusters) {
+            var members = Collections.newSetFromMap(new IdentityHashMap<EmbeddingVector, Boolean>());
+            members.addAll(cluster.members());
+            result.add(members);
+        }
+        return result;
+    }
+
+    @Test
+    void singleThreadIsSameAsSequential() throws Exception {
+        var vectors = separatedCorpus(200, 5000, 1);
+        var sequential = new NaiveClustering<>(METRIC, THRESHOLD);
+        vectors.forEach(sequential::add);
+        var parallel = new NaiveClusteringParallel<>(METRIC, THRESHOLD);
+        addConcurrently(parallel, vectors, 1);
+        var expected = sequential.getClusters();
+        var actual = parallel.getClusters();
+        assertThat(actual).hasSameSizeAs(expected);
+        for (int i = 0; i < actual.size(); i++) {
+            assertThat(actual.get(i).members()).containsExactlyElementsOf(expected.get(i).members());
+        }
+    }
+
+    @Test
+    void concurrentRunMatchesSequential() throws Exception {
+        var vectors = separatedCorpus(200, 20000, 2);
+        var sequential = new NaiveClustering<>(METRIC, THRESHOLD);
+        vectors.forEach(sequential::add);
+        var parallel = new NaiveClusteringParallel<>(METRIC, THRESHOLD);
+        addConcurrently(parallel, vectors, 8);
+        var clusters = parallel.getClusters();
+
+        assertThat(clusters.stream().mapToInt(c -> c.members().size()).sum()).isEqualTo(vectors.size());
+        for (int i = 0; i < clusters.size(); i++) {
+            for (int j = 0; j < i; j++) {
+                assertThat(METRIC.distance(clusters.get(j).leader(), clusters.get(i).leader())).isGreaterThanOrEqualTo(THRESHOLD);
+            }
+        }
+        assertThat(partition(clusters)).isEqualTo(partition(sequential.getClusters()));
+    }
+}
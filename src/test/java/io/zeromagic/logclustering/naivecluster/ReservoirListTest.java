@@ -0,0 +1,63 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReservoirListTest {
+    @Test
+    void keepsBoundedSampleOfAll() {
+        var list = new ReservoirList<>(0, 20);
+        for (int i = 1; i < 10_000; i++) {
+            list.add(i);
+        }
+        assertThat(list).hasSize(20).doesNotHaveDuplicates().allMatch(i -> i >= 0 && i < 10_000);
+        assertThat(list.seen()).isEqualTo(10_000);
+    }
+
+    @Test
+    void samplesUniformly() {
+        // how often each of 100 members ends up in a sample of 10
+        var hits = new int[100];
+        for (int round = 0; round < 2000; round++) {
+            var list = new ReservoirList<>(0, 10);
+            IntStream.range(1, 100).forEach(list::add);
+            list.forEach(i -> hits[i]++);
+        }
+        // expected 200 each
+        assertThat(IntStream.of(hits).boxed()).allMatch(h -> h > 120 && h < 280);
+    }
+
+    @Test
+    void mergeWeighsByNumberOfMembers() {
+        var inFirst = 0;
+        for (int round = 0; round < 1000; round++) {
+            var first = new ReservoirList<>(0, 10);
+            IntStream.range(1, 900).forEach(first::add);
+            var second = new ReservoirList<>(-1, 10);
+            IntStream.range(2, 101).forEach(i -> second.add(-i));
+
+            first.addAll(second);
+
+            assertThat(first).hasSize(10);
+            assertThat(first.seen()).isEqualTo(1000);
+            inFirst += (int) first.stream().filter(i -> i >= 0).count();
+        }
+        // expected 9 of 10
+        assertThat(inFirst / 1000.0).isBetween(8.5, 9.5);
+    }
+
+    @Test
+    void summaryClusterCountsAllMembers() {
+        var clustering = new NaiveClustering<Integer>((a, b) -> Math.abs(a - b) / 1000.0, 0.5,
+                new LinearScanIndex<>((a, b) -> Math.abs(a - b) / 1000.0), leader -> Cluster.sampled(leader, 5));
+        IntStream.range(0, 300).forEach(clustering::add);
+        assertThat(clustering.getClusters()).hasSize(1);
+        var cluster = clustering.getClusters().getFirst();
+        assertThat(cluster.members()).hasSize(5);
+        assertThat(cluster.statistics().count()).isEqualTo(300);
+        assertThat(cluster.statistics().stats().max()).isEqualTo(0.299);
+    }
+}
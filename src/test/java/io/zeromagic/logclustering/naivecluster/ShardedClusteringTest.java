@@ -0,0 +1,72 @@
+package io.zeromagic.logclustering.naivecluster;
+
+import io.zeromagic.logclustering.vector.OptimizedTermVector;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static io.zeromagic.logclustering.naivecluster.InvertedTermIndexTest.corpus;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardedClusteringTest {
+    private static final double THRESHOLD = 0.35;
+    private static final Metric<OptimizedTermVector> METRIC = OptimizedTermVector::cosineDistance;
+
+    static List<Cluster<OptimizedTermVector>> cluster(List<OptimizedTermVector> vectors, int shards) {
+        var clustering = new ShardedClustering<>(METRIC, THRESHOLD, InvertedTermIndex::new, shards);
+        vectors.forEach(clustering::add);
+        return clustering.getClusters();
+    }
+
+    @Test
+    void singleShardIsSameAsSequential() {
+        var vectors = corpus(2000, 5);
+        var sequential = new NaiveClustering<>(METRIC, THRESHOLD);
+        vectors.forEach(sequential::add);
+        var sharded = cluster(vectors, 1);
+        assertThat(sharded).hasSameSizeAs(sequential.getClusters());
+        for (int i = 0; i < sharded.size(); i++) {
+            assertThat(sharded.get(i).members()).containsExactlyElementsOf(sequential.getClusters().get(i).members());
+        }
+    }
+
+    @Test
+    void mergeIsDeterministicAndKeepsAllMembers() {
+        var vectors = corpus(5000, 5);
+        var first = cluster(vectors, 4);
+        var second = cluster(vectors, 4);
+        assertThat(first.stream().mapToInt(c -> c.members().size()).sum()).isEqualTo(vectors.size());
+        assertThat(first).hasSameSizeAs(second);
+        for (int i = 0; i < first.size(); i++) {
+            assertThat(first.get(i).leader()).isSameAs(second.get(i).leader());
+            assertThat(first.get(i).members()).containsExactlyElementsOf(second.get(i).members());
+        }
+        // no two merged leaders are within threshold
+        for (int i = 0; i < first.size(); i++) {
+            for (int j = 0; j < i; j++) {
+                assertThat(METRIC.distance(first.get(j).leader(), first.get(i).leader())).isGreaterThanOrEqualTo(THRESHOLD);
+            }
+        }
+    }
+
+    @Test
+    void seededClustersComeFirstAndAbsorbCloseShardClusters() {
+        var vectors = corpus(3000, 5);
+        var earlier = cluster(vectors.subList(0, 1000), 2);
+        var clustering = new ShardedClustering<>(METRIC, THRESHOLD, InvertedTermIndex::new, 2);
+        var seeds = earlier.stream().map(c -> Cluster.empty(c.leader(), 0)).toList();
+        seeds.forEach(clustering::seed);
+        vectors.subList(1000, 3000).forEach(clustering::add);
+
+        var clusters = clustering.getClusters();
+        for (int i = 0; i < seeds.size(); i++) {
+            assertThat(clusters.get(i)).isSameAs(seeds.get(i));
+        }
+        assertThat(clusters.stream().mapToInt(c -> c.members().size()).sum()).isEqualTo(2000);
+        for (int i = seeds.size(); i < clusters.size(); i++) {
+            for (var seed : seeds) {
+                assertThat(METRIC.distance(seed.leader(), clusters.get(i).leader())).isGreaterThanOrEqualTo(THRESHOLD);
+            }
+        }
+    }
+}
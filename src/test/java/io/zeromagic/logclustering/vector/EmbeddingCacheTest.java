@@ -0,0 +1,120 @@
+package io.zeromagic.logclustering.vector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddingCacheTest {
+    static float[] vector(int seed) {
+        return new float[]{seed, -seed, seed * 0.5f};
+    }
+
+    static List<String> queries(int from, int to) {
+        return IntStream.range(from, to).mapToObj(i -> "query " + i).toList();
+    }
+
+    static List<float[]> vectors(int from, int to) {
+        return IntStream.range(from, to).mapToObj(EmbeddingCacheTest::vector).toList();
+    }
+
+    @Test
+    void survivesReopening(@TempDir Path dir) throws IOException {
+        var file = dir.resolve("model.cache");
+        try (var cache = EmbeddingCache.open(file, "model", 3, 1000)) {
+            assertThat(cache.getAll(queries(0, 2))).isDeepEqualTo(new float[2][]);
+            cache.putAll(queries(0, 100), vectors(0, 100));
+        }
+        try (var cache = EmbeddingCache.open(file, "model", 3, 50);
+             var other = EmbeddingCache.open(file, "other", 3, 50)) {
+            assertThat(cache.getAll(queries(0, 100))).isDeepEqualTo(vectors(0, 100).toArray(float[][]::new));
+            assertThat(cache.hits()).isEqualTo(100);
+            assertThat(other.getAll(queries(0, 1))).isDeepEqualTo(new float[1][]);
+        }
+        assertThatThrownBy(() -> EmbeddingCache.open(file, "model", 4, 1000)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void replacesLeastRecentlyUsed(@TempDir Path dir) throws IOException {
+        // with capacity equal to probe distance every key can take any slot
+        try (var cache = EmbeddingCache.open(dir.resolve("model.cache"), "model", 3, 16)) {
+            cache.putAll(queries(0, 16), vectors(0, 16));
+            cache.getAll(queries(0, 1));
+            cache.putAll(queries(16, 17), vectors(16, 17));
+
+            var result = cache.getAll(queries(0, 17));
+            assertThat(result[0]).isEqualTo(vector(0));
+            assertThat(result[1]).isNull();
+            assertThat(result[16]).isEqualTo(vector(16));
+        }
+    }
+
+    @Test
+    void sharedWithinProcess(@TempDir Path dir) throws Exception {
+        var file = dir.resolve("model.cache");
+        try (var executor = Executors.newFixedThreadPool(4)) {
+            var tasks = new ArrayList<Future<?>>();
+            for (int t = 0; t < 4; t++) {
+                var from = t * 100;
+                tasks.add(executor.submit(() -> {
+                    try (var cache = EmbeddingCache.open(file, "model", 3, 4096)) {
+                        for (int i = from; i < from + 100; i += 10) {
+                            cache.putAll(queries(i, i + 10), vectors(i, i + 10));
+                            cache.getAll(queries(0, 400));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (var task : tasks) {
+                task.get();
+            }
+        }
+        try (var cache = EmbeddingCache.open(file, "model", 3, 4096)) {
+            assertThat(cache.getAll(queries(0, 400))).isDeepEqualTo(vectors(0, 400).toArray(float[][]::new));
+        }
+    }
+
+    @Test
+    void findsKeysPastSlotsClearedByCrash(@TempDir Path dir) throws IOException {
+        var file = dir.resolve("model.cache");
+        try (var cache = EmbeddingCache.open(file, "model", 3, 16)) {
+            cache.putAll(queries(0, 16), vectors(0, 16));
+        }
+        // a run that crashed while replacing every other slot left their keys cleared
+        var survivors = new HashSet<Integer>();
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var slots = channel.map(FileChannel.MapMode.READ_WRITE, 64, 16 * 36).order(ByteOrder.LITTLE_ENDIAN);
+            for (int slot = 0; slot < 16; slot++) {
+                if (slot % 2 == 0) {
+                    slots.putLong(slot * 36, 0).putLong(slot * 36 + 8, 0);
+                } else {
+                    survivors.add((int) slots.getFloat(slot * 36 + 24));
+                }
+            }
+        }
+        try (var cache = EmbeddingCache.open(file, "model", 3, 16)) {
+            var result = cache.getAll(queries(0, 16));
+            for (int i = 0; i < 16; i++) {
+                assertThat(result[i]).as("query %d", i).isEqualTo(survivors.contains(i) ? vector(i) : null);
+            }
+            // a stored key is replaced in place rather than duplicated into an empty slot
+            var survivor = survivors.iterator().next();
+            cache.putAll(queries(survivor, survivor + 1), List.of(vector(100)));
+            assertThat(cache.getAll(queries(survivor, survivor + 1))[0]).isEqualTo(vector(100));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package io.zeromagic.logclustering.vector;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class EmbeddingKernelTest {
+    static float[][] randomVectors(int count, int dim, long seed) {
+        var rand = new Random(seed);
+        var result = new float[count][dim];
+        for (var v : result) {
+            for (int i = 0; i < dim; i++) {
+                v[i] = (float) rand.nextGaussian();
+            }
+        }
+        return result;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 16, 384, 385, 768})
+    void kernelsAgree(int dim) {
+        var vectors = randomVectors(11, dim, dim);
+        var query = randomVectors(1, dim, -dim)[0];
+        var scalar = EmbeddingKernel.scalar();
+        var kernel = EmbeddingKernel.INSTANCE;
+        var matrix = new float[vectors.length * dim];
+        for (int v = 0; v < vectors.length; v++) {
+            System.arraycopy(vectors[v], 0, matrix, v * dim, dim);
+        }
+        var batch = new float[vectors.length];
+        kernel.dot(query, matrix, 1, vectors.length, batch);
+        assertThat(batch[0]).isZero();
+        for (int v = 1; v < vectors.length; v++) {
+            // different kernels differ in rounding
+            var expected = scalar.dot(query, vectors[v]);
+            assertThat(batch[v]).isCloseTo(expected, within(1e-3f * dim));
+            assertThat(kernel.dot(query, vectors[v])).isCloseTo(expected, within(1e-3f * dim));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package io.zeromagic.logclustering.vector;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.data.segment.TextSegment;
+import jakarta.json.Json;
+import jakarta.json.JsonString;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HttpEmbeddingModelTest {
+    private static final HttpEmbeddingModel.Config CONFIG = new HttpEmbeddingModel.Config(3, 2, 2,
+            Duration.ofMillis(1), Duration.ofSeconds(10));
+
+    private HttpServer server;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    // status to respond with to the first requests, before answering normally
+    private volatile int failures;
+    private volatile int failureStatus;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/api/embed", exchange -> respond(exchange, true));
+        server.createContext("/v1/embeddings", exchange -> respond(exchange, false));
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Vector of a text is its length and its first character
+     */
+    static float[] vector(String text) {
+        return new float[]{text.length(), text.charAt(0)};
+    }
+
+    private void respond(HttpExchange exchange, boolean ollama) throws IOException {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            var request = Json.createReader(new StringReader(
+                    new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8))).readObject();
+            var texts = request.getJsonArray("input").getValuesAs(JsonString.class);
+            if (requests.incrementAndGet() <= failures) {
+                exchange.sendResponseHeaders(failureStatus, -1);
+                return;
+            }
+            // answer slower for shorter texts, so that responses come out of order
+            Thread.sleep(50 - texts.get(0).getString().length());
+            var response = Json.createObjectBuilder();
+            var vectors = Json.createArrayBuilder();
+            var order = new ArrayList<>(IntStream.range(0, texts.size()).boxed().toList());
+            if (!ollama) {
+                // OpenAI entries carry their index
+                Collections.reverse(order);
+            }
+            for (var i : order) {
+                var v = Json.createArrayBuilder();
+                for (var f : vector(texts.get(i).getString())) {
+                    v.add(f);
+                }
+                if (ollama) {
+                    vectors.add(v);
+                } else {
+                    vectors.add(Json.createObjectBuilder().add("index", i).add("embedding", v));
+                }
+            }
+            if (ollama) {
+                response.add("embeddings", vectors).add("prompt_eval_count", texts.size());
+            } else {
+                response.add("data", vectors).add("usage", Json.createObjectBuilder().add("prompt_tokens", texts.size()));
+            }
+            var body = response.build().toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    static List<TextSegment> segments(int count) {
+        return IntStream.range(0, count).mapToObj(i -> TextSegment.from((char) ('a' + i) + "x".repeat(i))).toList();
+    }
+
+    @Test
+    void keepsOrderOfTexts() {
+        for (var api : HttpEmbeddingModel.Api.values()) {
+            var model = new HttpEmbeddingModel(api, url(api == HttpEmbeddingModel.Api.OLLAMA ? "" : "/v1"), "m", CONFIG);
+            var segments = segments(15);
+
+            var response = model.embedAll(segments);
+
+            assertThat(response.content()).hasSize(15);
+            for (int i = 0; i < 15; i++) {
+                assertThat(response.content().get(i).vector()).as(api + " " + i)
+                        .containsExactly(vector(segments.get(i).text()));
+            }
+            assertThat(response.tokenUsage().inputTokenCount()).isEqualTo(15);
+        }
+        assertThat(maxInFlight.get()).isBetween(2, 3);
+    }
+
+    @Test
+    void retriesTransientFailures() {
+        failures = 2;
+        failureStatus = 503;
+        var model = new HttpEmbeddingModel(HttpEmbeddingModel.Api.OLLAMA, url("/"), "m", CONFIG);
+
+        assertThat(model.embedAll(segments(1)).content().get(0).vector()).containsExactly(vector("a"));
+        assertThat(requests.get()).isEqualTo(3);
+    }
+
+    @Test
+    void failsOnClientError() {
+        failures = 1;
+        failureStatus = 404;
+        var model = new HttpEmbeddingModel(HttpEmbeddingModel.Api.OLLAMA, url("/"), "m", CONFIG);
+
+        assertThatThrownBy(() -> model.embedAll(segments(1))).hasRootCauseMessage(
+                "HTTP 404 from %s: ".formatted(url("/api/embed")));
+        assertThat(requests.get()).isEqualTo(1);
+    }
+
+    @Test
+    void copiesShareLimitOfRequestsInFlight() throws Exception {
+        var model = new HttpEmbeddingModel(HttpEmbeddingModel.Api.OLLAMA, url("/"), "m", CONFIG);
+        var copy = model.copy();
+        try (var executor = Executors.newFixedThreadPool(2)) {
+            var first = executor.submit(() -> model.embedAll(segments(15)));
+            var second = executor.submit(() -> copy.embedAll(segments(15)));
+            assertThat(first.get().content()).hasSize(15);
+            assertThat(second.get().content()).hasSize(15);
+        }
+        assertThat(maxInFlight.get()).isEqualTo(3);
+
+        // client stays open while a copy uses it
+        model.close();
+        assertThat(copy.embedAll(segments(1)).content()).hasSize(1);
+        copy.close();
+        assertThatThrownBy(() -> copy.embedAll(segments(1))).isInstanceOf(IllegalStateException.class);
+    }
+}
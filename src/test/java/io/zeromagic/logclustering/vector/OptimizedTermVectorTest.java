@@ -0,0 +1,66 @@
+package io.zeromagic.logclustering.vector;
+
+import io.zeromagic.logclustering.input.LogEntry;
+import io.zeromagic.logclustering.input.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class OptimizedTermVectorTest {
+    private static final String[] WORDS = {"connect", "server", "node1", "retry", "failed", "java", "io",
+            "IOException", "at", "org", "apache", "hadoop", "10", "0", "1", "8030", "time", "s", "é"};
+
+    record Entry(String body, String exception, Map<String, String> metadata) implements LogEntry {}
+
+    static List<Entry> randomEntries(int count, long seed) {
+        var rand = new Random(seed);
+        var result = new ArrayList<Entry>();
+        for (int i = 0; i < count; i++) {
+            result.add(new Entry(randomText(rand), rand.nextBoolean() ? randomText(rand) : null, Map.of(
+                    LogEntry.MetadataKeys.LEVEL, rand.nextBoolean() ? "INFO" : "SEVERE",
+                    LogEntry.MetadataKeys.POD, "pod-" + rand.nextInt(3),
+                    LogEntry.MetadataKeys.TIMESTAMP, "2024-09-24T07:00:0" + rand.nextInt(10))));
+        }
+        return result;
+    }
+
+    private static String randomText(Random rand) {
+        var text = new StringBuilder();
+        for (int j = rand.nextInt(30); j > 0; j--) {
+            text.append(WORDS[rand.nextInt(WORDS.length)]).append(rand.nextInt(4) == 0 ? ": " : " ");
+        }
+        return text.toString();
+    }
+
+    @Test
+    void distanceMatchesTermVector() {
+        var entries = randomEntries(200, 7);
+        var optimized = entries.stream().map(OptimizedTermVector::of).toList();
+        var original = entries.stream().map(e -> TermVector.of(e, Tokenizer.SIMPLE)).toList();
+        for (int i = 0; i < entries.size(); i++) {
+            for (int j = 0; j < entries.size(); j++) {
+                assertThat(optimized.get(i).cosineDistance(optimized.get(j)))
+                        .as("distance of %d and %d", i, j)
+                        .isCloseTo(original.get(i).cosineDistance(original.get(j)), within(1e-9));
+            }
+        }
+    }
+
+    @Test
+    void failedEntryDoesNotLeakIntoNextVector() {
+        var failing = new Entry("stale terms", null, null);
+        assertThatThrownBy(() -> OptimizedTermVector.of(failing)).isInstanceOf(NullPointerException.class);
+        assertThatThrownBy(() -> OptimizedTermVector.lookup(failing)).isInstanceOf(NullPointerException.class);
+
+        var entry = new Entry("fresh", null, Map.of());
+        assertThat(OptimizedTermVector.of(entry).ids()).containsExactly(TermDictionary.SHARED.id("fresh"));
+        assertThat(OptimizedTermVector.lookup(entry).ids()).containsExactly(TermDictionary.SHARED.id("fresh"));
+    }
+}
@@ -0,0 +1,55 @@
+package io.zeromagic.logclustering.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TermDictionaryTest {
+    @Test
+    void concurrentThreadsAgreeOnIds() throws InterruptedException, ExecutionException {
+        var dictionary = new TermDictionary();
+        var terms = 20_000;
+        var threads = 8;
+        var seen = new ConcurrentHashMap<String, Integer>();
+        var start = new CountDownLatch(1);
+        var tasks = new ArrayList<Future<?>>();
+        try (var executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                var offset = t;
+                tasks.add(executor.submit(() -> {
+                    start.await();
+                    // every thread adds all terms, starting at a different one, while the table grows
+                    for (int i = 0; i < terms; i++) {
+                        var term = "term" + (i * 7 + offset * 1013) % terms;
+                        var text = "<" + term + ">";
+                        var id = (i & 1) == 0 ? dictionary.id(term) : dictionary.id(text, 1, text.length() - 1);
+                        var previous = seen.putIfAbsent(term, id);
+                        if (previous != null && previous != id) {
+                            throw new AssertionError(term + " has ids " + previous + " and " + id);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+        }
+        for (var task : tasks) {
+            task.get();
+        }
+        assertThat(seen).hasSize(terms);
+        assertThat(dictionary.size()).isEqualTo(terms);
+        assertThat(new HashSet<>(seen.values())).hasSize(terms);
+        seen.forEach((term, id) -> {
+            assertThat(dictionary.term(id)).isEqualTo(term);
+            assertThat(dictionary.find(term, 0, term.length())).isEqualTo(id);
+        });
+    }
+}